@@ -0,0 +1,289 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Demonstrates copying files asynchronously. Every copy uses asynchronous file channels and
+ * completion handlers instead of blocking a thread for it's whole duration. A configurable number
+ * of read/write chains is kept outstanding per copy, each chain reading a buffer at the next
+ * unclaimed file position, and writing it at the same position once the read completes. All
+ * channels share the same thread pool, which allows a small number of threads to drive many
+ * concurrent copies. Note that depending on the platform, asynchronous file I/O may be emulated
+ * by performing blocking I/O within the pool threads; the number of threads blocked at any time
+ * is still bounded by the pool size though. Also note that this class is declared final because
+ * it provides an application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyAsynchronous {
+	static private final Set<OpenOption> SOURCE_OPTIONS = Set.of(StandardOpenOption.READ);
+	static private final Set<OpenOption> SINK_OPTIONS = Set.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	static private final int DEFAULT_BUFFER_SIZE = 0x10000;
+	static private final int DEFAULT_OUTSTANDING = 4;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyAsynchronous.copy");
+
+	private final ExecutorService threadPool;
+	private final int bufferSize;
+	private final int outstanding;
+
+
+	/**
+	 * Chunk of a file being copied, consisting of a buffer and the file position it corresponds
+	 * to.
+	 */
+	static private final class Chunk {
+		private final ByteBuffer buffer;
+		private long position;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param bufferSize the buffer size
+		 */
+		public Chunk (final int bufferSize) {
+			this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+	}
+
+
+	/**
+	 * State of a single asynchronous copy.
+	 */
+	static private final class Transfer {
+		private final AsynchronousFileChannel source;
+		private final AsynchronousFileChannel sink;
+		private final long size;
+		private final AtomicLong nextPosition;
+		private final AtomicInteger activeChains;
+		private final CompletableFuture<Long> future;
+		private final CompletionHandler<Integer,Chunk> readHandler;
+		private final CompletionHandler<Integer,Chunk> writeHandler;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param source the source channel
+		 * @param sink the sink channel
+		 * @param chainCount the number of read/write chains
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public Transfer (final AsynchronousFileChannel source, final AsynchronousFileChannel sink, final int chainCount) throws IOException {
+			this.source = source;
+			this.sink = sink;
+			this.size = source.size();
+			this.nextPosition = new AtomicLong();
+			this.activeChains = new AtomicInteger(chainCount);
+			this.future = new CompletableFuture<>();
+
+			this.readHandler = new CompletionHandler<>() {
+				@Override
+				public void completed (final Integer bytesRead, final Chunk chunk) {
+					if (bytesRead == -1) {
+						this.failed(new IOException("source file truncated during copy"), chunk);
+					} else if (chunk.buffer.hasRemaining()) {
+						Transfer.this.source.read(chunk.buffer, chunk.position + chunk.buffer.position(), chunk, this);
+					} else {
+						chunk.buffer.flip();
+						Transfer.this.sink.write(chunk.buffer, chunk.position, chunk, Transfer.this.writeHandler);
+					}
+				}
+
+				@Override
+				public void failed (final Throwable exception, final Chunk chunk) {
+					Transfer.this.fail(exception);
+				}
+			};
+
+			this.writeHandler = new CompletionHandler<>() {
+				@Override
+				public void completed (final Integer bytesWritten, final Chunk chunk) {
+					if (chunk.buffer.hasRemaining()) {
+						Transfer.this.sink.write(chunk.buffer, chunk.position + chunk.buffer.position(), chunk, this);
+					} else {
+						Transfer.this.next(chunk);
+					}
+				}
+
+				@Override
+				public void failed (final Throwable exception, final Chunk chunk) {
+					Transfer.this.fail(exception);
+				}
+			};
+		}
+
+
+		/**
+		 * Continues the given chunk's chain by reading the next unclaimed file section, or
+		 * ends the chain if there is none. Completes the transfer once the last chain ends.
+		 * @param chunk the chunk
+		 */
+		public void next (final Chunk chunk) {
+			if (this.future.isDone()) return;
+
+			chunk.position = this.nextPosition.getAndAdd(chunk.buffer.capacity());
+			if (chunk.position < this.size) {
+				chunk.buffer.clear().limit((int) Math.min(chunk.buffer.capacity(), this.size - chunk.position));
+				this.source.read(chunk.buffer, chunk.position, chunk, this.readHandler);
+			} else if (this.activeChains.decrementAndGet() == 0) {
+				try {
+					this.close();
+					this.future.complete(this.size);
+				} catch (final IOException exception) {
+					this.future.completeExceptionally(exception);
+				}
+			}
+		}
+
+
+		/**
+		 * Fails this transfer with the given exception, and closes it's channels, which causes
+		 * all pending operations of the other chains to fail as well.
+		 * @param exception the exception
+		 */
+		public void fail (final Throwable exception) {
+			if (!this.future.completeExceptionally(exception)) return;
+
+			try {
+				this.close();
+			} catch (final IOException e) {
+				exception.addSuppressed(e);
+			}
+		}
+
+
+		/**
+		 * Closes both channels.
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public void close () throws IOException {
+			try {
+				this.source.close();
+			} finally {
+				this.sink.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Initializes a new instance.
+	 * @param threadPool the thread pool shared by all channels
+	 * @param bufferSize the buffer size, in number of bytes
+	 * @param outstanding the number of read/write operations outstanding per copy
+	 * @throws NullPointerException if the given thread pool is {@code null}
+	 * @throws IllegalArgumentException if the given buffer size or number of outstanding
+	 *         operations is not strictly positive
+	 */
+	public FileCopyAsynchronous (final ExecutorService threadPool, final int bufferSize, final int outstanding) throws NullPointerException, IllegalArgumentException {
+		if (threadPool == null) throw new NullPointerException();
+		if (bufferSize <= 0 | outstanding <= 0) throw new IllegalArgumentException();
+
+		this.threadPool = threadPool;
+		this.bufferSize = bufferSize;
+		this.outstanding = outstanding;
+	}
+
+
+	/**
+	 * Copies files asynchronously. The arguments are expected to be pairs of qualified source and
+	 * target file names, all of which are copied concurrently using a thread pool with one thread
+	 * per processor.
+	 * @param args the VM arguments
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws IOException {
+		if (args.length == 0 || args.length % 2 != 0) throw new IllegalArgumentException();
+		for (int index = 0; index < args.length; index += 2) {
+			final Path sourcePath = Paths.get(args[index]);
+			if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+			final Path sinkPath = Paths.get(args[index + 1]);
+			if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+		}
+
+		final ExecutorService threadPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			final FileCopyAsynchronous engine = new FileCopyAsynchronous(threadPool, DEFAULT_BUFFER_SIZE, DEFAULT_OUTSTANDING);
+			final long timestamp = System.currentTimeMillis();
+
+			final List<CompletableFuture<Long>> futures = new ArrayList<>();
+			for (int index = 0; index < args.length; index += 2) {
+				futures.add(engine.copy(Paths.get(args[index]), Paths.get(args[index + 1])));
+			}
+
+			long bytesCopied = 0;
+			for (final CompletableFuture<Long> future : futures) {
+				try {
+					bytesCopied += Uninterruptibles.get(future);
+				} catch (final ExecutionException exception) {
+					final Throwable cause = exception.getCause();
+					if (cause instanceof Error) throw (Error) cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof IOException) throw (IOException) cause;
+					throw new AssertionError();
+				}
+			}
+
+			System.out.format("done, %d files with %d bytes copied in %dms.\n", futures.size(), bytesCopied, System.currentTimeMillis() - timestamp);
+		} finally {
+			threadPool.shutdown();
+		}
+	}
+
+
+	/**
+	 * Starts copying the given source file to the given sink file, which is created or truncated.
+	 * The returned future completes with the number of bytes copied once the copy is complete,
+	 * or exceptionally if an I/O related problem occurs during the copy.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @return the future number of bytes copied
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem opening the files
+	 */
+	public CompletableFuture<Long> copy (final Path sourcePath, final Path sinkPath) throws NullPointerException, IOException {
+		final AsynchronousFileChannel source = AsynchronousFileChannel.open(sourcePath, SOURCE_OPTIONS, this.threadPool);
+		final Transfer transfer;
+		try {
+			final AsynchronousFileChannel sink = AsynchronousFileChannel.open(sinkPath, SINK_OPTIONS, this.threadPool);
+			try {
+				final int chainCount = (int) Math.max(1, Math.min(this.outstanding, (source.size() + this.bufferSize - 1) / this.bufferSize));
+				transfer = new Transfer(source, sink, chainCount);
+			} catch (final IOException exception) {
+				sink.close();
+				throw exception;
+			}
+		} catch (final IOException exception) {
+			source.close();
+			throw exception;
+		}
+
+		final long timestamp = COPY_METRICS.start();
+		transfer.future.whenComplete((bytesCopied, exception) -> COPY_METRICS.stop(timestamp, bytesCopied == null ? 0 : bytesCopied));
+
+		for (int chain = transfer.activeChains.get(); chain > 0; --chain) {
+			transfer.next(new Chunk(this.bufferSize));
+		}
+		return transfer.future;
+	}
+}
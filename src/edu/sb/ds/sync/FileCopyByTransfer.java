@@ -0,0 +1,147 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Demonstrates copying a file using zero-copy channel transfers. In opposition to
+ * {@link FileCopySingleThreaded}, the content is not moved through a Java heap buffer; instead,
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} and
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} allow the operating system to
+ * copy the data within kernel space, on Linux using {@code sendfile} or {@code copy_file_range}.
+ * If neither side is a file channel, the copy falls back to a buffered loop. Note that this class
+ * is declared final because it provides an application entry point, and therefore not supposed to
+ * be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyByTransfer {
+	static private final int BUFFER_SIZE = 0x10000;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyByTransfer.copy");
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopyByTransfer () {}
+
+
+	/**
+	 * Copies a file. The first argument is expected to be a qualified source file name, the second
+	 * a qualified target file name.
+	 * @param args the VM arguments
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final long timestamp = System.currentTimeMillis();
+		final long bytesCopied = copy(sourcePath, sinkPath);
+		System.out.format("done, %d bytes copied in %dms.\n", bytesCopied, System.currentTimeMillis() - timestamp);
+	}
+
+
+	/**
+	 * Copies the given source file to the given sink file, which is created or truncated.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @return the number of bytes copied
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public long copy (final Path sourcePath, final Path sinkPath) throws NullPointerException, IOException {
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				return copy(source, sink);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel, and writes them to the given sink
+	 * channel. Returns the number of bytes copied, and closes neither source nor sink. The copy is
+	 * performed using {@link FileChannel#transferTo(long, long, WritableByteChannel)} if the source
+	 * is a file channel, otherwise using
+	 * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} if the sink is a file
+	 * channel, otherwise using a buffered loop. In any case, the positions of both channels are
+	 * advanced by the number of bytes copied.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @return the number of bytes copied
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public long copy (final ReadableByteChannel source, final WritableByteChannel sink) throws NullPointerException, IOException {
+		if (source == null | sink == null) throw new NullPointerException();
+
+		final long timestamp = COPY_METRICS.start();
+		long bytesCopied = 0;
+		try {
+			return bytesCopied = transfer(source, sink);
+		} finally {
+			COPY_METRICS.stop(timestamp, bytesCopied);
+		}
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel, and writes them to the given sink
+	 * channel, see {@link #copy(ReadableByteChannel, WritableByteChannel)}.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @return the number of bytes copied
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private long transfer (final ReadableByteChannel source, final WritableByteChannel sink) throws IOException {
+		if (source instanceof FileChannel) {
+			final FileChannel fileSource = (FileChannel) source;
+			final long start = fileSource.position(), size = fileSource.size();
+
+			long position = start;
+			for (long bytesCopied = -1; position < size & bytesCopied != 0; position += bytesCopied) {
+				bytesCopied = fileSource.transferTo(position, size - position, sink);
+			}
+			fileSource.position(position);
+
+			// a transfer making no progress indicates a source truncated during the copy, or a sink unable to accept bytes
+			if (position < size) throw new IOException("transfer stalled after " + (position - start) + " bytes");
+			return position - start;
+		}
+
+		if (sink instanceof FileChannel) {
+			final FileChannel fileSink = (FileChannel) sink;
+			final long start = fileSink.position();
+
+			long position = start;
+			for (long bytesCopied = fileSink.transferFrom(source, position, Long.MAX_VALUE); bytesCopied > 0; bytesCopied = fileSink.transferFrom(source, position, Long.MAX_VALUE)) {
+				position += bytesCopied;
+			}
+			fileSink.position(position);
+			return position - start;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long bytesCopied = 0;
+		for (int bytesRead = source.read(buffer); bytesRead != -1; bytesRead = source.read(buffer)) {
+			buffer.flip();
+			while (buffer.hasRemaining()) sink.write(buffer);
+			buffer.clear();
+			bytesCopied += bytesRead;
+		}
+		return bytesCopied;
+	}
+}
@@ -0,0 +1,463 @@
+package edu.sb.ds.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Demonstrates copying a file incrementally. Both source and target are split into fixed-size
+ * blocks, and each block is hashed using a cheap weak hash (Adler-32) plus a strong hash
+ * (SHA-256); a target block's strong hash is only computed if it's weak hash matches the one of
+ * the corresponding source block. Only blocks whose hashes differ are rewritten, which
+ * reduces the write volume of re-synchronizing large files that mostly remain unchanged. The
+ * blocks are processed in parallel using positional reads and writes. After copying, the block
+ * hashes are stored in a sidecar file next to the target, named after the target with a
+ * {@value #SIDECAR_SUFFIX} suffix. As long as the target's size and modification time match the
+ * ones recorded within the sidecar, the next run uses the recorded hashes instead of re-reading
+ * the target. Note that this class is declared final because it provides an application entry
+ * point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyIncremental {
+	static private final String SIDECAR_SUFFIX = ".blocks";
+	static private final int SIDECAR_MAGIC = 0x424C4B31;
+	static private final String STRONG_HASH_ALGORITHM = "SHA-256";
+	static private final int STRONG_HASH_SIZE = 32;
+	static private final int DEFAULT_BLOCK_SIZE = 0x100000;
+	static private final int BLOCKS_PER_TASK = 16;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyIncremental.copy");
+
+
+	/**
+	 * Incremental copy statistics.
+	 */
+	static public final class Statistics {
+		private final int blockCount;
+		private final int blocksRewritten;
+		private final long bytesRewritten;
+		private final boolean sidecarUsed;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param blockCount the number of blocks
+		 * @param blocksRewritten the number of blocks rewritten
+		 * @param bytesRewritten the number of bytes rewritten
+		 * @param sidecarUsed whether or not the target block hashes were taken from the sidecar
+		 */
+		private Statistics (final int blockCount, final int blocksRewritten, final long bytesRewritten, final boolean sidecarUsed) {
+			this.blockCount = blockCount;
+			this.blocksRewritten = blocksRewritten;
+			this.bytesRewritten = bytesRewritten;
+			this.sidecarUsed = sidecarUsed;
+		}
+
+
+		/**
+		 * Returns the number of source blocks.
+		 * @return the block count
+		 */
+		public int getBlockCount () {
+			return this.blockCount;
+		}
+
+
+		/**
+		 * Returns the number of blocks rewritten.
+		 * @return the number of blocks that differed
+		 */
+		public int getBlocksRewritten () {
+			return this.blocksRewritten;
+		}
+
+
+		/**
+		 * Returns the number of bytes rewritten.
+		 * @return the number of bytes within the blocks that differed
+		 */
+		public long getBytesRewritten () {
+			return this.bytesRewritten;
+		}
+
+
+		/**
+		 * Returns whether or not the target block hashes were taken from the sidecar, instead of
+		 * being computed by reading the target.
+		 * @return {@code true} if the sidecar was used, {@code false} otherwise
+		 */
+		public boolean isSidecarUsed () {
+			return this.sidecarUsed;
+		}
+	}
+
+
+	/**
+	 * Block hashes of a file, consisting of a weak and a strong hash for each block.
+	 */
+	static private final class BlockHashes {
+		private final int[] weakHashes;
+		private final byte[] strongHashes;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param blockCount the number of blocks
+		 */
+		public BlockHashes (final int blockCount) {
+			this.weakHashes = new int[blockCount];
+			this.strongHashes = new byte[blockCount * STRONG_HASH_SIZE];
+		}
+
+
+		/**
+		 * Returns the number of blocks.
+		 * @return the block count
+		 */
+		public int blockCount () {
+			return this.weakHashes.length;
+		}
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopyIncremental () {}
+
+
+	/**
+	 * Copies a file incrementally. The first argument is expected to be a qualified source file
+	 * name, the second a qualified target file name. The optional third argument is the block size
+	 * in bytes (default is 1MiB), the optional fourth argument the number of worker threads
+	 * (default is the number of processors).
+	 * @param args the VM arguments
+	 * @throws NumberFormatException if the block size or worker count is not an integral number
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws NumberFormatException, IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final int blockSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BLOCK_SIZE;
+		final int workerCount = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		final long timestamp = System.currentTimeMillis();
+		final Statistics statistics = copy(sourcePath, sinkPath, blockSize, workerCount);
+		System.out.format("done, %d of %d blocks (%d bytes) rewritten in %dms%s.\n", statistics.getBlocksRewritten(), statistics.getBlockCount(), statistics.getBytesRewritten(), System.currentTimeMillis() - timestamp, statistics.isSidecarUsed() ? " using sidecar" : "");
+	}
+
+
+	/**
+	 * Copies the given source file incrementally to the given sink file, which is created if
+	 * necessary, and adjusted to the source file's size. Only blocks differing between source and
+	 * sink are rewritten. Afterwards, the sink's sidecar file is updated.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param blockSize the block size, in number of bytes
+	 * @param workerCount the number of worker threads
+	 * @return the copy statistics
+	 * @throws NullPointerException if any of the given paths is {@code null}
+	 * @throws IllegalArgumentException if the given block size or worker count is not strictly
+	 *         positive
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public Statistics copy (final Path sourcePath, final Path sinkPath, final int blockSize, final int workerCount) throws NullPointerException, IllegalArgumentException, IOException {
+		if (blockSize <= 0 | workerCount <= 0) throw new IllegalArgumentException();
+
+		final long timestamp = COPY_METRICS.start();
+		long bytesCopied = 0;
+		try {
+			final Statistics statistics = copyChangedBlocks(sourcePath, sinkPath, blockSize, workerCount);
+			bytesCopied = statistics.getBytesRewritten();
+			return statistics;
+		} finally {
+			COPY_METRICS.stop(timestamp, bytesCopied);
+		}
+	}
+
+
+	/**
+	 * Copies the given source file incrementally to the given sink file, see
+	 * {@link #copy(Path, Path, int, int)}.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param blockSize the block size, in number of bytes
+	 * @param workerCount the number of worker threads
+	 * @return the copy statistics
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private Statistics copyChangedBlocks (final Path sourcePath, final Path sinkPath, final int blockSize, final int workerCount) throws IOException {
+		final Path sidecarPath = sinkPath.resolveSibling(sinkPath.getFileName() + SIDECAR_SUFFIX);
+		final BlockHashes sinkHashes = readSidecar(sidecarPath, sinkPath, blockSize);
+
+		// remove the sidecar before modifying the sink, as it must never describe a partially copied sink
+		Files.deleteIfExists(sidecarPath);
+
+		final BlockHashes sourceHashes;
+		final AtomicInteger blocksRewritten = new AtomicInteger();
+		final AtomicLong bytesRewritten = new AtomicLong();
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				final long size = source.size(), sinkSize = sink.size();
+				final int sinkBlockCount = (int) ((sinkSize + blockSize - 1) / blockSize);
+				sourceHashes = new BlockHashes((int) ((size + blockSize - 1) / blockSize));
+
+				// adjust the target file size beforehand to prevent concurrent file growth
+				if (sinkSize > size) sink.truncate(size);
+				if (sinkSize < size) sink.write(ByteBuffer.allocate(1), size - 1);
+
+				final ExecutorService threadPool = Executors.newFixedThreadPool(workerCount);
+				Throwable failure = null;
+				try {
+					final List<Future<?>> futures = new ArrayList<>();
+					for (int block = 0; block < sourceHashes.blockCount(); block += BLOCKS_PER_TASK) {
+						final int lower = block, upper = Math.min(sourceHashes.blockCount(), block + BLOCKS_PER_TASK);
+						futures.add(threadPool.submit(() -> {
+							try {
+								copyBlocks(source, sink, lower, upper, blockSize, sourceHashes, sinkHashes, sinkBlockCount, size, blocksRewritten, bytesRewritten);
+							} catch (final IOException exception) {
+								throw new UncheckedIOException(exception);
+							}
+						}));
+					}
+
+					for (final Future<?> future : futures) {
+						try {
+							Uninterruptibles.get(future);
+						} catch (final CancellationException e) {
+							// blocks skipped because of an earlier failure
+						} catch (final ExecutionException e) {
+							final Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+							if (failure == null) {
+								failure = cause;
+								for (final Future<?> pending : futures) pending.cancel(false);
+							} else {
+								failure.addSuppressed(cause);
+							}
+						}
+					}
+				} finally {
+					// wait for running workers even after a failure, as they might otherwise outlive this call;
+					// note that interrupting the workers would close the channels they use
+					threadPool.shutdown();
+					Uninterruptibles.awaitTermination(threadPool);
+				}
+
+				if (failure != null) {
+					if (failure instanceof Error) throw (Error) failure;
+					if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+					if (failure instanceof IOException) throw (IOException) failure;
+					throw new AssertionError();
+				}
+			}
+		}
+
+		writeSidecar(sidecarPath, sinkPath, blockSize, sourceHashes);
+		return new Statistics(sourceHashes.blockCount(), blocksRewritten.get(), bytesRewritten.get(), sinkHashes != null);
+	}
+
+
+	/**
+	 * Copies the given range of blocks, rewriting the blocks that differ, and records the source
+	 * block hashes.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param lower the inclusive lower block index
+	 * @param upper the exclusive upper block index
+	 * @param blockSize the block size
+	 * @param sourceHashes the source block hashes to be computed
+	 * @param sinkHashes the sink block hashes taken from the sidecar, or {@code null} for none
+	 * @param sinkBlockCount the number of blocks within the sink before it was resized
+	 * @param size the source file size
+	 * @param blocksRewritten the number of blocks rewritten, to be increased
+	 * @param bytesRewritten the number of bytes rewritten, to be increased
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void copyBlocks (final FileChannel source, final FileChannel sink, final int lower, final int upper, final int blockSize, final BlockHashes sourceHashes, final BlockHashes sinkHashes, final int sinkBlockCount, final long size, final AtomicInteger blocksRewritten, final AtomicLong bytesRewritten) throws IOException {
+		final MessageDigest digester = newDigester();
+		final Adler32 checksum = new Adler32();
+		final ByteBuffer sourceBuffer = ByteBuffer.allocateDirect(blockSize);
+		final ByteBuffer sinkBuffer = sinkHashes == null ? ByteBuffer.allocateDirect(blockSize) : null;
+		final byte[] sinkStrongHash = new byte[STRONG_HASH_SIZE];
+
+		for (int block = lower; block < upper; ++block) {
+			final long position = (long) block * blockSize;
+			final int length = (int) Math.min(blockSize, size - position);
+
+			read(source, sourceBuffer, position, length);
+			checksum.reset();
+			checksum.update(sourceBuffer);
+			sourceHashes.weakHashes[block] = (int) checksum.getValue();
+			sourceBuffer.flip();
+			digester.update(sourceBuffer);
+			digest(digester, sourceHashes.strongHashes, block * STRONG_HASH_SIZE);
+
+			boolean identical = false;
+			if (block < sinkBlockCount) {
+				if (sinkHashes == null) {
+					// the sink is read with the source length, as it's size has been adjusted
+					read(sink, sinkBuffer, position, length);
+					checksum.reset();
+					checksum.update(sinkBuffer);
+					if ((int) checksum.getValue() == sourceHashes.weakHashes[block]) {
+						sinkBuffer.flip();
+						digester.update(sinkBuffer);
+						digest(digester, sinkStrongHash, 0);
+						identical = Arrays.equals(sinkStrongHash, 0, STRONG_HASH_SIZE, sourceHashes.strongHashes, block * STRONG_HASH_SIZE, (block + 1) * STRONG_HASH_SIZE);
+					}
+				} else if (block < sinkHashes.blockCount() && sinkHashes.weakHashes[block] == sourceHashes.weakHashes[block]) {
+					identical = Arrays.equals(sinkHashes.strongHashes, block * STRONG_HASH_SIZE, (block + 1) * STRONG_HASH_SIZE, sourceHashes.strongHashes, block * STRONG_HASH_SIZE, (block + 1) * STRONG_HASH_SIZE);
+				}
+			}
+
+			if (!identical) {
+				sourceBuffer.flip();
+				for (long offset = position; sourceBuffer.hasRemaining(); ) {
+					offset += sink.write(sourceBuffer, offset);
+				}
+				blocksRewritten.incrementAndGet();
+				bytesRewritten.addAndGet(length);
+			}
+		}
+	}
+
+
+	/**
+	 * Fills the given buffer with the given number of bytes read from the given channel at the
+	 * given position, and leaves it flipped for reading.
+	 * @param channel the file channel
+	 * @param buffer the buffer
+	 * @param position the file position
+	 * @param length the number of bytes to read
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void read (final FileChannel channel, final ByteBuffer buffer, final long position, final int length) throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) throw new IOException("file truncated during copy");
+		}
+		buffer.flip();
+	}
+
+
+	/**
+	 * Completes the given digester's computation, storing the resulting hash into the given
+	 * array at the given offset.
+	 * @param digester the message digester
+	 * @param hashes the hash array
+	 * @param offset the array offset
+	 */
+	static private void digest (final MessageDigest digester, final byte[] hashes, final int offset) {
+		System.arraycopy(digester.digest(), 0, hashes, offset, STRONG_HASH_SIZE);
+	}
+
+
+	/**
+	 * Returns a new strong hash digester.
+	 * @return the message digester
+	 */
+	static private MessageDigest newDigester () {
+		try {
+			return MessageDigest.getInstance(STRONG_HASH_ALGORITHM);
+		} catch (final NoSuchAlgorithmException exception) {
+			// SHA-256 is required to be supported by every Java platform
+			throw new AssertionError(exception);
+		}
+	}
+
+
+	/**
+	 * Returns the block hashes recorded within the given sidecar file, provided it matches the
+	 * given block size, plus the given sink file's current size and modification time. A sidecar
+	 * that cannot be read, or whose block count does not match the recorded size, is treated as
+	 * outdated, which causes every sink block to be compared by reading the sink instead.
+	 * @param sidecarPath the sidecar file path
+	 * @param sinkPath the sink file path
+	 * @param blockSize the block size
+	 * @return the sink block hashes, or {@code null} if the sidecar is missing, outdated or corrupt
+	 */
+	static private BlockHashes readSidecar (final Path sidecarPath, final Path sinkPath, final int blockSize) {
+		if (!Files.isRegularFile(sidecarPath) || !Files.isRegularFile(sinkPath)) return null;
+
+		try (DataInputStream sidecar = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecarPath)))) {
+			if (sidecar.readInt() != SIDECAR_MAGIC || sidecar.readInt() != blockSize) return null;
+
+			final long size = sidecar.readLong();
+			if (size != Files.size(sinkPath) || sidecar.readLong() != Files.getLastModifiedTime(sinkPath).toMillis()) return null;
+
+			// check the block count before allocating, as a corrupt count might otherwise exhaust the heap
+			final int blockCount = sidecar.readInt();
+			if (blockCount != (size + blockSize - 1) / blockSize) return null;
+
+			final BlockHashes hashes = new BlockHashes(blockCount);
+			for (int block = 0; block < hashes.blockCount(); ++block) {
+				hashes.weakHashes[block] = sidecar.readInt();
+			}
+			sidecar.readFully(hashes.strongHashes);
+			if (sidecar.read() != -1) return null;
+			return hashes;
+		} catch (final IOException exception) {
+			// includes EOFException, caused by a truncated sidecar
+			return null;
+		}
+	}
+
+
+	/**
+	 * Writes the given block hashes into the given sidecar file, together with the given block
+	 * size, plus the given sink file's current size and modification time. The sidecar is
+	 * replaced atomically, if supported by the file system.
+	 * @param sidecarPath the sidecar file path
+	 * @param sinkPath the sink file path
+	 * @param blockSize the block size
+	 * @param hashes the sink block hashes
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void writeSidecar (final Path sidecarPath, final Path sinkPath, final int blockSize, final BlockHashes hashes) throws IOException {
+		final Path temporaryPath = sidecarPath.resolveSibling(sidecarPath.getFileName() + ".tmp");
+
+		try (DataOutputStream sidecar = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+			sidecar.writeInt(SIDECAR_MAGIC);
+			sidecar.writeInt(blockSize);
+			sidecar.writeLong(Files.size(sinkPath));
+			sidecar.writeLong(Files.getLastModifiedTime(sinkPath).toMillis());
+			sidecar.writeInt(hashes.blockCount());
+			for (int block = 0; block < hashes.blockCount(); ++block) {
+				sidecar.writeInt(hashes.weakHashes[block]);
+			}
+			sidecar.write(hashes.strongHashes);
+		}
+
+		Files.move(temporaryPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,213 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Demonstrates copying a file using multiple threads. The target file is preallocated to the
+ * source file size, and the source is split into regions, each of which is copied independently
+ * by one of the worker threads. A region is copied either by mapping it into memory in both files,
+ * or using positional reads and writes through a direct buffer; both variants are safe for
+ * concurrent use of the same file channels. This allows fast storage devices like NVMe drives
+ * to process multiple requests at once. Note that this class is declared final because it provides
+ * an application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyMultiThreaded {
+	static private final int DEFAULT_REGION_SIZE = 0x4000000;
+	static private final int BUFFER_SIZE = 0x100000;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyMultiThreaded.copy");
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopyMultiThreaded () {}
+
+
+	/**
+	 * Copies a file. The first argument is expected to be a qualified source file name, the second
+	 * a qualified target file name. The optional third argument is the number of worker threads
+	 * (default is the number of processors), the optional fourth argument the region size in bytes
+	 * (default is 64MiB), and the optional fifth argument is either "map" for memory-mapped copying
+	 * (the default), or "io" for positional reads and writes.
+	 * @param args the VM arguments
+	 * @throws NumberFormatException if the worker count or region size is not an integral number
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws NumberFormatException, IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final int workerCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final int regionSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_REGION_SIZE;
+		final boolean mapped = args.length > 4 ? "map".equals(args[4]) : true;
+
+		final long timestamp = System.currentTimeMillis();
+		final long bytesCopied = copy(sourcePath, sinkPath, workerCount, regionSize, mapped);
+		System.out.format("done, %d bytes copied by %d workers in %dms.\n", bytesCopied, workerCount, System.currentTimeMillis() - timestamp);
+	}
+
+
+	/**
+	 * Copies the given source file to the given sink file, which is created or truncated, using
+	 * the given number of worker threads.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param workerCount the number of worker threads
+	 * @param regionSize the number of bytes copied by a worker at once
+	 * @param mapped {@code true} for copying memory-mapped regions, {@code false} for positional
+	 *        reads and writes
+	 * @return the number of bytes copied
+	 * @throws NullPointerException if any of the given paths is {@code null}
+	 * @throws IllegalArgumentException if the given worker count or region size is not strictly
+	 *         positive
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public long copy (final Path sourcePath, final Path sinkPath, final int workerCount, final int regionSize, final boolean mapped) throws NullPointerException, IllegalArgumentException, IOException {
+		if (workerCount <= 0 | regionSize <= 0) throw new IllegalArgumentException();
+
+		final long timestamp = COPY_METRICS.start();
+		long bytesCopied = 0;
+		try {
+			return bytesCopied = copyRegions(sourcePath, sinkPath, workerCount, regionSize, mapped);
+		} finally {
+			COPY_METRICS.stop(timestamp, bytesCopied);
+		}
+	}
+
+
+	/**
+	 * Copies the given source file to the given sink file region by region, see
+	 * {@link #copy(Path, Path, int, int, boolean)}.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param workerCount the number of worker threads
+	 * @param regionSize the number of bytes copied by a worker at once
+	 * @param mapped {@code true} for copying memory-mapped regions, {@code false} for positional
+	 *        reads and writes
+	 * @return the number of bytes copied
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private long copyRegions (final Path sourcePath, final Path sinkPath, final int workerCount, final int regionSize, final boolean mapped) throws IOException {
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				final long size = source.size();
+				if (size == 0) return 0;
+
+				// preallocate the target file to prevent concurrent file growth
+				sink.write(ByteBuffer.allocate(1), size - 1);
+
+				final ExecutorService threadPool = Executors.newFixedThreadPool(workerCount);
+				Throwable failure = null;
+				try {
+					final List<Future<?>> futures = new ArrayList<>();
+					for (long position = 0; position < size; position += regionSize) {
+						final long regionPosition = position;
+						final int regionLength = (int) Math.min(regionSize, size - position);
+						futures.add(threadPool.submit(() -> {
+							try {
+								if (mapped) {
+									copyMapped(source, sink, regionPosition, regionLength);
+								} else {
+									copyPositional(source, sink, regionPosition, regionLength);
+								}
+							} catch (final IOException exception) {
+								throw new UncheckedIOException(exception);
+							}
+						}));
+					}
+
+					for (final Future<?> future : futures) {
+						try {
+							Uninterruptibles.get(future);
+						} catch (final CancellationException e) {
+							// region skipped because of an earlier failure
+						} catch (final ExecutionException e) {
+							final Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+							if (failure == null) {
+								failure = cause;
+								for (final Future<?> pending : futures) pending.cancel(false);
+							} else {
+								failure.addSuppressed(cause);
+							}
+						}
+					}
+				} finally {
+					// wait for running workers even after a failure, as they might otherwise outlive this call;
+					// note that interrupting the workers would close the channels they use
+					threadPool.shutdown();
+					Uninterruptibles.awaitTermination(threadPool);
+				}
+
+				if (failure == null) return size;
+				if (failure instanceof Error) throw (Error) failure;
+				if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+				if (failure instanceof IOException) throw (IOException) failure;
+				throw new AssertionError();
+			}
+		}
+	}
+
+
+	/**
+	 * Copies the given region by mapping it into memory within both files.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param position the region position
+	 * @param length the region length
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void copyMapped (final FileChannel source, final FileChannel sink, final long position, final int length) throws IOException {
+		final MappedByteBuffer sourceRegion = source.map(MapMode.READ_ONLY, position, length);
+		final MappedByteBuffer sinkRegion = sink.map(MapMode.READ_WRITE, position, length);
+		sinkRegion.put(sourceRegion);
+	}
+
+
+	/**
+	 * Copies the given region using positional reads and writes.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param position the region position
+	 * @param length the region length
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void copyPositional (final FileChannel source, final FileChannel sink, final long position, final int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.min(BUFFER_SIZE, length));
+
+		for (long offset = position, stop = position + length; offset < stop; ) {
+			buffer.clear().limit((int) Math.min(buffer.capacity(), stop - offset));
+			while (buffer.hasRemaining()) {
+				if (source.read(buffer, offset + buffer.position()) == -1) throw new IOException("source file truncated during copy");
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				offset += sink.write(buffer, offset);
+			}
+		}
+	}
+}
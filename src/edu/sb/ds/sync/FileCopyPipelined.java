@@ -0,0 +1,217 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Reference;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Demonstrates copying a file using a two-stage pipeline. In opposition to
+ * {@link FileCopySingleThreaded}, reading and writing are performed by separate threads, which
+ * allows the read and write latencies of the storage devices to overlap instead of adding up. A
+ * reader thread fills buffers taken from a small pool, and hands them over to the writer thread
+ * using a bounded ring; the writer returns each buffer to the pool once it has been written. The
+ * time both sides spend waiting for each other (stall time) is measured, which indicates whether
+ * the ring is sized appropriately: a reader stalling indicates a slow sink, a writer stalling
+ * indicates a slow source, and significant stall times on both sides indicate a ring too small to
+ * absorb latency jitter. Note that this class is declared final because it provides an
+ * application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyPipelined {
+	static private final int DEFAULT_BUFFER_SIZE = 0x10000;
+	static private final int DEFAULT_BUFFER_COUNT = 4;
+	static private final ByteBuffer EOF = ByteBuffer.allocate(0);
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyPipelined.copy");
+
+
+	/**
+	 * Pipeline copy statistics.
+	 */
+	static public final class Statistics {
+		private final long bytesCopied;
+		private final long readerStallNanos;
+		private final long writerStallNanos;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param bytesCopied the number of bytes copied
+		 * @param readerStallNanos the reader stall time in nanoseconds
+		 * @param writerStallNanos the writer stall time in nanoseconds
+		 */
+		private Statistics (final long bytesCopied, final long readerStallNanos, final long writerStallNanos) {
+			this.bytesCopied = bytesCopied;
+			this.readerStallNanos = readerStallNanos;
+			this.writerStallNanos = writerStallNanos;
+		}
+
+
+		/**
+		 * Returns the number of bytes copied.
+		 * @return the byte count
+		 */
+		public long getBytesCopied () {
+			return this.bytesCopied;
+		}
+
+
+		/**
+		 * Returns the time the reader spent waiting for free buffers.
+		 * @return the reader stall time in nanoseconds
+		 */
+		public long getReaderStallNanos () {
+			return this.readerStallNanos;
+		}
+
+
+		/**
+		 * Returns the time the writer spent waiting for filled buffers.
+		 * @return the writer stall time in nanoseconds
+		 */
+		public long getWriterStallNanos () {
+			return this.writerStallNanos;
+		}
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopyPipelined () {}
+
+
+	/**
+	 * Copies a file. The first argument is expected to be a qualified source file name, the second
+	 * a qualified target file name. The optional third argument is the buffer size in bytes
+	 * (default is 64KiB), the optional fourth argument the number of buffers (default is 4).
+	 * @param args the VM arguments
+	 * @throws NumberFormatException if the buffer size or count is not an integral number
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws NumberFormatException, IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUFFER_SIZE;
+		final int bufferCount = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BUFFER_COUNT;
+
+		final long timestamp = System.currentTimeMillis();
+		final Statistics statistics;
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				statistics = copy(source, sink, bufferSize, bufferCount);
+			}
+		}
+
+		System.out.format("done, %d bytes copied in %dms.\n", statistics.getBytesCopied(), System.currentTimeMillis() - timestamp);
+		System.out.format("reader stalled for %.3fms, writer stalled for %.3fms.\n", statistics.getReaderStallNanos() * 1E-6, statistics.getWriterStallNanos() * 1E-6);
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel within a separate reader thread,
+	 * and writes them to the given sink channel within the current thread. Closes neither source
+	 * nor sink.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param bufferSize the buffer size, in number of bytes
+	 * @param bufferCount the number of buffers, which is also the ring capacity
+	 * @return the copy statistics
+	 * @throws NullPointerException if any of the given channels is {@code null}
+	 * @throws IllegalArgumentException if the given buffer size or count is not strictly positive
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public Statistics copy (final ReadableByteChannel source, final WritableByteChannel sink, final int bufferSize, final int bufferCount) throws NullPointerException, IllegalArgumentException, IOException {
+		if (source == null | sink == null) throw new NullPointerException();
+		if (bufferSize <= 0 | bufferCount <= 0) throw new IllegalArgumentException();
+
+		final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(bufferCount);
+		final BlockingQueue<ByteBuffer> ring = new ArrayBlockingQueue<>(bufferCount + 1);
+		for (int index = 0; index < bufferCount; ++index) {
+			pool.add(ByteBuffer.allocateDirect(bufferSize));
+		}
+
+		// the reader's exception and stall time are published to the writer by the EOF hand-over
+		final Reference<Throwable> readerException = new Reference<>();
+		final long[] readerStallNanos = { 0 };
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final Runnable reader = () -> {
+			try {
+				while (true) {
+					final long timestamp = System.nanoTime();
+					final ByteBuffer buffer = Uninterruptibles.take(pool);
+					readerStallNanos[0] += System.nanoTime() - timestamp;
+
+					if (aborted.get()) break;
+
+					buffer.clear();
+					int bytesRead = 0;
+					while (buffer.hasRemaining() && (bytesRead = source.read(buffer)) != -1);
+					buffer.flip();
+
+					if (buffer.hasRemaining()) Uninterruptibles.put(ring, buffer);
+					if (bytesRead == -1) break;
+				}
+			} catch (final Throwable exception) {
+				// any failure must be reported, as the writer would otherwise treat the EOF as the regular end of the source
+				readerException.put(exception);
+			} finally {
+				Uninterruptibles.put(ring, EOF);
+			}
+		};
+
+		final long copyTimestamp = COPY_METRICS.start();
+		final Thread readerThread = new Thread(reader, "pipeline-reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		long bytesCopied = 0, writerStallNanos = 0;
+		try {
+			while (true) {
+				final long timestamp = System.nanoTime();
+				final ByteBuffer buffer = Uninterruptibles.take(ring);
+				writerStallNanos += System.nanoTime() - timestamp;
+				if (buffer == EOF) break;
+
+				while (buffer.hasRemaining()) {
+					bytesCopied += sink.write(buffer);
+				}
+				Uninterruptibles.put(pool, buffer);
+			}
+		} catch (final Throwable exception) {
+			// release the reader, which would otherwise wait for free buffers indefinitely
+			aborted.set(true);
+			for (int index = pool.size(); index < bufferCount; ++index) {
+				pool.offer(EOF);
+			}
+			throw exception;
+		} finally {
+			Uninterruptibles.join(readerThread);
+			COPY_METRICS.stop(copyTimestamp, bytesCopied);
+		}
+
+		final Throwable exception = readerException.get();
+		if (exception == null) return new Statistics(bytesCopied, readerStallNanos[0], writerStallNanos);
+		if (exception instanceof Error) throw (Error) exception;
+		if (exception instanceof RuntimeException) throw (RuntimeException) exception;
+		if (exception instanceof IOException) throw (IOException) exception;
+		throw new AssertionError();
+	}
+}
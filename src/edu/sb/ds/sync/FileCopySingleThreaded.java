@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import edu.sb.ds.util.CopyMetrics;
 import edu.sb.ds.util.Copyright;
 
 
@@ -15,6 +16,8 @@ import edu.sb.ds.util.Copyright;
  */
 @Copyright(year=2008, holders="Sascha Baumeister")
 public final class FileCopySingleThreaded {
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopySingleThreaded.copy");
+
 
 	/**
 	 * Copies a file. The first argument is expected to be a qualified source file name, the second
@@ -34,8 +37,15 @@ public final class FileCopySingleThreaded {
 		try (InputStream fis = Files.newInputStream(sourcePath)) {
 			try (OutputStream fos = Files.newOutputStream(sinkPath)) {
 				final byte[] buffer = new byte[0x10000];
-				for (int bytesRead = fis.read(buffer); bytesRead != -1; bytesRead = fis.read(buffer)) {
-					fos.write(buffer, 0, bytesRead);
+				final long timestamp = COPY_METRICS.start();
+				long bytesCopied = 0;
+				try {
+					for (int bytesRead = fis.read(buffer); bytesRead != -1; bytesRead = fis.read(buffer)) {
+						fos.write(buffer, 0, bytesRead);
+						bytesCopied += bytesRead;
+					}
+				} finally {
+					COPY_METRICS.stop(timestamp, bytesCopied);
 				}
 			}
 		}
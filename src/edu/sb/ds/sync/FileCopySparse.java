@@ -0,0 +1,172 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Demonstrates copying a file into a sparse file. The source is read in blocks, and every block
+ * consisting of zeros only is skipped instead of being written, which leaves a hole within the
+ * target file; the zero test is performed word by word. Consecutive non-zero blocks are written
+ * at once. This saves both time and disk space when copying mostly empty files like virtual
+ * machine images. Note that the source's own holes cannot be detected in Java, and are therefore
+ * read as zeros. Also note that this class is declared final because it provides an application
+ * entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopySparse {
+	static private final int BLOCK_SIZE = 0x1000;
+	static private final int BUFFER_SIZE = 0x100000;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopySparse.copy");
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopySparse () {}
+
+
+	/**
+	 * Copies a file. The first argument is expected to be a qualified source file name, the second
+	 * a qualified target file name.
+	 * @param args the VM arguments
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final long timestamp = System.currentTimeMillis();
+		final long bytesWritten = copy(sourcePath, sinkPath);
+		System.out.format("done, %d bytes copied in %dms, %d bytes written.\n", Files.size(sinkPath), System.currentTimeMillis() - timestamp, bytesWritten);
+	}
+
+
+	/**
+	 * Copies the given source file to the given sink file, which is created or truncated, and
+	 * opened as a sparse file. Blocks of zeros are skipped.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @return the number of bytes written, excluding the holes
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public long copy (final Path sourcePath, final Path sinkPath) throws NullPointerException, IOException {
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+				return copy(source, sink);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel, and writes them to the given sink
+	 * channel starting at it's current position, skipping blocks of zeros. As skipped blocks only
+	 * read as zeros if the sink has no content there, the sink is truncated to it's current
+	 * position first, which discards any of it's content beyond. The sink's position is advanced
+	 * by the number of bytes copied, and it's size is extended to cover a trailing hole if
+	 * necessary. Closes neither source nor sink.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @return the number of bytes written, excluding the holes
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public long copy (final ReadableByteChannel source, final FileChannel sink) throws NullPointerException, IOException {
+		if (source == null | sink == null) throw new NullPointerException();
+
+		sink.truncate(sink.position());
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+		final long start = sink.position(), timestamp = COPY_METRICS.start();
+		long position = start, bytesWritten = 0;
+		try {
+			while (true) {
+				buffer.clear();
+				while (buffer.hasRemaining() && source.read(buffer) != -1);
+				if (buffer.position() == 0) break;
+				final int limit = buffer.position();
+
+				int runStart = -1;
+				for (int blockStart = 0; blockStart < limit; blockStart += BLOCK_SIZE) {
+					final int blockStop = Math.min(limit, blockStart + BLOCK_SIZE);
+					final boolean zero = isZero(buffer, blockStart, blockStop);
+
+					if (!zero & runStart == -1) runStart = blockStart;
+					if (zero & runStart != -1) {
+						bytesWritten += write(sink, buffer, runStart, blockStart, position);
+						runStart = -1;
+					}
+				}
+				if (runStart != -1) bytesWritten += write(sink, buffer, runStart, limit, position);
+
+				position += limit;
+				if (buffer.hasRemaining()) break;
+			}
+
+			// a trailing hole requires the last byte to be written, as file channels cannot extend files otherwise
+			if (sink.size() < position) {
+				sink.write(ByteBuffer.allocate(1), position - 1);
+				bytesWritten += 1;
+			}
+			sink.position(position);
+		} finally {
+			COPY_METRICS.stop(timestamp, position - start);
+		}
+		return bytesWritten;
+	}
+
+
+	/**
+	 * Returns whether or not the given buffer section consists of zeros only. The test is
+	 * performed word by word, followed by the remaining bytes.
+	 * @param buffer the buffer
+	 * @param lower the inclusive lower buffer index
+	 * @param upper the exclusive upper buffer index
+	 * @return {@code true} if all bytes are zero, {@code false} otherwise
+	 */
+	static private boolean isZero (final ByteBuffer buffer, final int lower, final int upper) {
+		int index = lower;
+		for (final int stop = upper - Long.BYTES; index <= stop; index += Long.BYTES) {
+			if (buffer.getLong(index) != 0) return false;
+		}
+		for (; index < upper; ++index) {
+			if (buffer.get(index) != 0) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Writes the given buffer section to the given channel, at the given file position plus the
+	 * section's lower buffer index.
+	 * @param sink the sink channel
+	 * @param buffer the buffer
+	 * @param lower the inclusive lower buffer index
+	 * @param upper the exclusive upper buffer index
+	 * @param position the file position corresponding to the buffer start
+	 * @return the number of bytes written
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private int write (final FileChannel sink, final ByteBuffer buffer, final int lower, final int upper, final long position) throws IOException {
+		final ByteBuffer section = buffer.duplicate();
+		section.limit(upper).position(lower);
+		while (section.hasRemaining()) {
+			sink.write(section, position + section.position());
+		}
+		return upper - lower;
+	}
+}
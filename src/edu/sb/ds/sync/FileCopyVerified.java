@@ -0,0 +1,231 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.NumeralSystems;
+
+
+/**
+ * Demonstrates copying a file while computing a digest of it's content within the same pass,
+ * which avoids re-reading the file for verification purposes. The digest algorithm is either
+ * {@value #CRC32C_ALGORITHM} (hardware accelerated on most platforms), or any message digest
+ * algorithm supported by the platform, like {@code SHA-256}. Optionally, the target file can be verified by
+ * reading it back through a mapped channel, and comparing the resulting digest. Note that this
+ * class is declared final because it provides an application entry point, and therefore not
+ * supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileCopyVerified {
+	static public final String CRC32C_ALGORITHM = "CRC32C";
+	static private final int BUFFER_SIZE = 0x10000;
+	static private final int MAPPING_SIZE = 0x40000000;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("FileCopyVerified.copy");
+
+
+	/**
+	 * Digester abstracting checksums and message digests.
+	 */
+	static private interface Digester {
+
+		/**
+		 * Updates this digester with the remaining bytes of the given buffer, advancing it's
+		 * position to it's limit.
+		 * @param buffer the buffer
+		 */
+		void update (ByteBuffer buffer);
+
+
+		/**
+		 * Completes the digest computation.
+		 * @return the digest
+		 */
+		byte[] digest ();
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private FileCopyVerified () {}
+
+
+	/**
+	 * Copies a file and prints it's digest. The first argument is expected to be a qualified
+	 * source file name, the second a qualified target file name. The optional third argument is
+	 * the digest algorithm (default is {@value #CRC32C_ALGORITHM}). If the optional fourth argument
+	 * is "verify", the target file is read back and verified afterwards.
+	 * @param args the VM arguments
+	 * @throws NoSuchAlgorithmException if the given digest algorithm is not supported
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws NoSuchAlgorithmException, IOException {
+		final Path sourcePath = Paths.get(args[0]);
+		if (!Files.isReadable(sourcePath)) throw new IllegalArgumentException(sourcePath.toString());
+
+		final Path sinkPath = Paths.get(args[1]);
+		if (sinkPath.getParent() != null && !Files.isDirectory(sinkPath.getParent())) throw new IllegalArgumentException(sinkPath.toString());
+
+		final String algorithm = args.length > 2 ? args[2] : CRC32C_ALGORITHM;
+		final boolean verify = args.length > 3 && "verify".equals(args[3]);
+
+		final long timestamp = System.currentTimeMillis();
+		final byte[] digest = copy(sourcePath, sinkPath, algorithm);
+		System.out.format("done, copied in %dms, %s is %s.\n", System.currentTimeMillis() - timestamp, algorithm, new String(NumeralSystems.toHexadecimal(digest)));
+
+		if (verify) {
+			final long verifyTimestamp = System.currentTimeMillis();
+			final byte[] verifyDigest = digest(sinkPath, algorithm);
+			final boolean verified = Arrays.equals(digest, verifyDigest);
+			System.out.format("target %s in %dms, %s is %s.\n", verified ? "verified" : "NOT verified", System.currentTimeMillis() - verifyTimestamp, algorithm, new String(NumeralSystems.toHexadecimal(verifyDigest)));
+		}
+	}
+
+
+	/**
+	 * Copies the given source file to the given sink file, which is created or truncated, and
+	 * returns the digest of the bytes copied.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param algorithm the digest algorithm
+	 * @return the digest
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws NoSuchAlgorithmException if the given digest algorithm is not supported
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public byte[] copy (final Path sourcePath, final Path sinkPath, final String algorithm) throws NullPointerException, NoSuchAlgorithmException, IOException {
+		final Digester digester = newDigester(algorithm);
+
+		try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+			try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				copy(source, sink, digester);
+			}
+		}
+
+		return digester.digest();
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel, and writes them to the given sink
+	 * channel, while returning the digest of the bytes copied. Closes neither source nor sink.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param algorithm the digest algorithm
+	 * @return the digest
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws NoSuchAlgorithmException if the given digest algorithm is not supported
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public byte[] copy (final ReadableByteChannel source, final WritableByteChannel sink, final String algorithm) throws NullPointerException, NoSuchAlgorithmException, IOException {
+		if (source == null | sink == null) throw new NullPointerException();
+
+		final Digester digester = newDigester(algorithm);
+		copy(source, sink, digester);
+		return digester.digest();
+	}
+
+
+	/**
+	 * Returns the digest of the given file's content, which is read through a mapped channel.
+	 * @param path the file path
+	 * @param algorithm the digest algorithm
+	 * @return the digest
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws NoSuchAlgorithmException if the given digest algorithm is not supported
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public byte[] digest (final Path path, final String algorithm) throws NullPointerException, NoSuchAlgorithmException, IOException {
+		final Digester digester = newDigester(algorithm);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			for (long position = 0; position < size; position += MAPPING_SIZE) {
+				digester.update(channel.map(MapMode.READ_ONLY, position, Math.min(MAPPING_SIZE, size - position)));
+			}
+		}
+
+		return digester.digest();
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given source channel, and writes them to the given sink
+	 * channel, while updating the given digester with each buffer read.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param digester the digester
+	 * @return the number of bytes copied
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private long copy (final ReadableByteChannel source, final WritableByteChannel sink, final Digester digester) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		final long timestamp = COPY_METRICS.start();
+		long bytesCopied = 0;
+		try {
+			for (int bytesRead = source.read(buffer); bytesRead != -1; bytesRead = source.read(buffer)) {
+				buffer.flip();
+				digester.update(buffer.duplicate());
+				while (buffer.hasRemaining()) sink.write(buffer);
+				buffer.clear();
+				bytesCopied += bytesRead;
+			}
+		} finally {
+			COPY_METRICS.stop(timestamp, bytesCopied);
+		}
+		return bytesCopied;
+	}
+
+
+	/**
+	 * Returns a new digester for the given algorithm.
+	 * @param algorithm the digest algorithm, either {@value #CRC32C_ALGORITHM} or a message digest
+	 *        algorithm
+	 * @return the digester created
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws NoSuchAlgorithmException if the given digest algorithm is not supported
+	 */
+	static private Digester newDigester (final String algorithm) throws NullPointerException, NoSuchAlgorithmException {
+		if (CRC32C_ALGORITHM.equalsIgnoreCase(algorithm)) {
+			final CRC32C checksum = new CRC32C();
+			return new Digester() {
+				@Override
+				public void update (final ByteBuffer buffer) {
+					checksum.update(buffer);
+				}
+
+				@Override
+				public byte[] digest () {
+					return ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array();
+				}
+			};
+		}
+
+		final MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
+		return new Digester() {
+			@Override
+			public void update (final ByteBuffer buffer) {
+				messageDigest.update(buffer);
+			}
+
+			@Override
+			public byte[] digest () {
+				return messageDigest.digest();
+			}
+		};
+	}
+}
@@ -0,0 +1,174 @@
+package edu.sb.ds.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+import com.sun.management.ThreadMXBean;
+import edu.sb.ds.util.ArraySupport;
+import edu.sb.ds.util.BitArrays;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.IOStreams;
+
+
+/**
+ * Micro benchmark harness for the vector math demonstrators and some of the utility facades, run
+ * for every operand size given. Each benchmark is measured over several timed iterations following
+ * untimed warm-up iterations, which allow the JIT to compile and optimize the code under test.
+ * Every benchmark result is folded into a volatile hash, which prevents the JIT from eliminating
+ * the computation as dead code. Reported are the mean throughput in operations per second, and the
+ * allocation rate in bytes per operation as measured by the current thread's allocation counter,
+ * plus the number of garbage collections that occurred during measurement. Note that this class
+ * is declared final because it provides an application entry point, and therefore not supposed to
+ * be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class MicroBenchmarks {
+	static private final int[] DEFAULT_SIZES = { 0x400, 0x10000, 0x100000 };
+	static private final int WARMUP_ITERATIONS = 5;
+	static private final int MEASUREMENT_ITERATIONS = 5;
+	static private final long ITERATION_NANOS = 500_000_000L;
+	static private final ThreadMXBean THREAD_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	static private final OutputStream NULL_SINK = new OutputStream() {
+		@Override
+		public void write (final int value) {}
+
+		@Override
+		public void write (final byte[] buffer, final int offset, final int length) {}
+	};
+	static private volatile int blackhole = 0;
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private MicroBenchmarks () {}
+
+
+	/**
+	 * Runs all benchmarks. The arguments are optional operand sizes, in number of elements.
+	 * @param args the argument array
+	 * @throws NumberFormatException if any of the given arguments is not an integral number
+	 */
+	static public void main (final String[] args) throws NumberFormatException {
+		final int[] sizes = new int[args.length == 0 ? DEFAULT_SIZES.length : args.length];
+		for (int index = 0; index < sizes.length; ++index) {
+			sizes[index] = args.length == 0 ? DEFAULT_SIZES[index] : Integer.parseInt(args[index]);
+		}
+
+		System.out.format("%-26s %10s %16s %16s %10s\n", "benchmark", "size", "ops/s", "bytes/op", "gc-count");
+		for (final int size : sizes) {
+			for (final Map.Entry<String,IntSupplier> entry : benchmarks(size).entrySet()) {
+				run(entry.getKey(), size, entry.getValue());
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the benchmarks for the given operand size.
+	 * @param size the operand size
+	 * @return the benchmarks, mapped by name
+	 */
+	static private Map<String,IntSupplier> benchmarks (final int size) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final double[] a = random.doubles(size).toArray(), b = random.doubles(size).toArray();
+		final int muxSize = (int) Math.sqrt(size);
+		final double[] c = random.doubles(muxSize).toArray(), d = random.doubles(muxSize).toArray();
+		final double[] sum = new double[size], product = new double[muxSize * muxSize];
+
+		final byte[] bytes = new byte[size];
+		random.nextBytes(bytes);
+		final byte[] pattern = { 0x7f, 0x7f, 0x7f, 0x7f };
+		final byte[] haystack = new byte[Math.max(size, pattern.length)];
+		System.arraycopy(pattern, 0, haystack, haystack.length - pattern.length, pattern.length);
+
+		final long[] leftBits = random.longs(Math.max(1, size >> 6)).toArray(), rightBits = random.longs(leftBits.length).toArray();
+		final long bitCount = (long) leftBits.length << 6;
+
+		final Map<String,IntSupplier> benchmarks = new LinkedHashMap<>();
+		benchmarks.put("VectorMath.add", () -> VectorMathSingleThreaded.add(a, b).length);
+		benchmarks.put("VectorMath.add (in-place)", () -> VectorMathSingleThreaded.add(a, b, sum).length);
+		benchmarks.put("VectorMath.mux", () -> VectorMathSingleThreaded.mux(c, d).length);
+		benchmarks.put("VectorMath.mux (in-place)", () -> VectorMathSingleThreaded.mux(c, d, product).length);
+		benchmarks.put("IOStreams.copy", () -> {
+			try {
+				return (int) IOStreams.copy(new ByteArrayInputStream(bytes), NULL_SINK, 0x10000);
+			} catch (final IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		});
+		benchmarks.put("BitArrays.xor", () -> {
+			BitArrays.xor(leftBits, rightBits, 0, bitCount);
+			return (int) leftBits[0];
+		});
+		benchmarks.put("BitArrays.cardinality", () -> (int) BitArrays.cardinality(leftBits, 0, bitCount));
+		benchmarks.put("ArraySupport.firstIndexOf", () -> ArraySupport.firstIndexOf(haystack, pattern, 0));
+		return benchmarks;
+	}
+
+
+	/**
+	 * Runs the given benchmark, and prints the results.
+	 * @param name the benchmark name
+	 * @param size the operand size
+	 * @param benchmark the benchmark
+	 */
+	static private void run (final String name, final int size, final IntSupplier benchmark) {
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS; ++iteration) {
+			iterate(benchmark);
+		}
+
+		final long threadId = Thread.currentThread().getId();
+		final long gcCount = collectionCount();
+		final long allocation = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+		long operationCount = 0;
+		double throughputSum = 0;
+		for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; ++iteration) {
+			final long[] result = iterate(benchmark);
+			operationCount += result[0];
+			throughputSum += result[0] * 1E9 / result[1];
+		}
+		final double bytesPerOperation = (double) (THREAD_BEAN.getThreadAllocatedBytes(threadId) - allocation) / operationCount;
+
+		System.out.format("%-26s %10d %16.1f %16.1f %10d\n", name, size, throughputSum / MEASUREMENT_ITERATIONS, bytesPerOperation, collectionCount() - gcCount);
+	}
+
+
+	/**
+	 * Executes the given benchmark repeatedly for the duration of one iteration.
+	 * @param benchmark the benchmark
+	 * @return the number of operations performed, and the elapsed time in nanoseconds
+	 */
+	static private long[] iterate (final IntSupplier benchmark) {
+		int resultHash = 0;
+		long operationCount = 0, elapsed;
+		final long start = System.nanoTime();
+		do {
+			resultHash ^= benchmark.getAsInt();
+			++operationCount;
+		} while ((elapsed = System.nanoTime() - start) < ITERATION_NANOS);
+
+		blackhole ^= resultHash;
+		return new long[] { operationCount, elapsed };
+	}
+
+
+	/**
+	 * Returns the total number of garbage collections performed so far.
+	 * @return the garbage collection count
+	 */
+	static private long collectionCount () {
+		long count = 0;
+		for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+}
@@ -0,0 +1,275 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Vector of double values stored outside the Java heap, featuring 64bit lengths. The elements
+ * are stored in native byte order within segments of {@value #SEGMENT_ELEMENTS} elements each,
+ * which are either direct buffers, or buffers mapped from a backing file. This removes the
+ * {@code 2^31} element limit of double arrays, and keeps the vector content out of reach of the
+ * garbage collector, with only a few small buffer objects residing on the heap. Note that the
+ * memory of direct and mapped buffers is released once their buffer objects are collected, as
+ * Java 11 offers no public API for explicit release; closing a file backed vector closes it's
+ * file channel, while the mapped segments remain valid. Instances are not thread-safe for
+ * concurrent modification.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class OffHeapVector implements AutoCloseable {
+	static private final int LOG2_SEGMENT_ELEMENTS = 27;
+	static private final int SEGMENT_ELEMENTS = 1 << LOG2_SEGMENT_ELEMENTS;
+	static private final int SEGMENT_MASK = SEGMENT_ELEMENTS - 1;
+	static private final int BLOCK_ELEMENTS = 0x1000;
+
+	private final long length;
+	private final DoubleBuffer[] segments;
+	private final FileChannel fileChannel;
+	private final MappedByteBuffer[] mappings;
+
+
+	/**
+	 * Block consumer used for outer-product streaming.
+	 */
+	@FunctionalInterface
+	static public interface BlockConsumer {
+
+		/**
+		 * Consumes a block of consecutive elements within a matrix row. Note that the given block
+		 * is reused for subsequent calls, and must therefore not be retained.
+		 * @param row the row index
+		 * @param column the column index of the first block element
+		 * @param block the block, positioned at it's first element
+		 */
+		void accept (long row, long column, DoubleBuffer block);
+	}
+
+
+	/**
+	 * Initializes a new instance based on direct buffers, with all elements being zero.
+	 * @param length the vector length
+	 * @throws IllegalArgumentException if the given length is negative
+	 * @throws OutOfMemoryError if there is insufficient direct memory available
+	 */
+	public OffHeapVector (final long length) throws IllegalArgumentException {
+		if (length < 0) throw new IllegalArgumentException();
+
+		this.length = length;
+		this.segments = new DoubleBuffer[segmentCount(length)];
+		this.fileChannel = null;
+		this.mappings = null;
+		for (int index = 0; index < this.segments.length; ++index) {
+			final int segmentLength = segmentLength(length, index);
+			this.segments[index] = ByteBuffer.allocateDirect(segmentLength * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		}
+	}
+
+
+	/**
+	 * Initializes a new instance based on the given file, which is created if necessary, and
+	 * resized to fit the given length. Any existing file content is interpreted as vector
+	 * elements in native byte order, while elements beyond the original file size are zero.
+	 * @param file the backing file path
+	 * @param length the vector length
+	 * @throws NullPointerException if the given file path is {@code null}
+	 * @throws IllegalArgumentException if the given length is negative, or too large to be
+	 *         expressed in bytes
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public OffHeapVector (final Path file, final long length) throws NullPointerException, IllegalArgumentException, IOException {
+		if (file == null) throw new NullPointerException();
+		if (length < 0 | length > Long.MAX_VALUE / Double.BYTES) throw new IllegalArgumentException();
+
+		this.length = length;
+		this.segments = new DoubleBuffer[segmentCount(length)];
+		this.mappings = new MappedByteBuffer[this.segments.length];
+		this.fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (this.fileChannel.size() > length * Double.BYTES) this.fileChannel.truncate(length * Double.BYTES);
+			for (int index = 0; index < this.segments.length; ++index) {
+				final long position = ((long) index << LOG2_SEGMENT_ELEMENTS) * Double.BYTES;
+				final int segmentLength = segmentLength(length, index);
+				this.mappings[index] = this.fileChannel.map(MapMode.READ_WRITE, position, segmentLength * (long) Double.BYTES);
+				this.segments[index] = this.mappings[index].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			}
+		} catch (final Throwable exception) {
+			try { this.fileChannel.close(); } catch (final Throwable nestedException) { exception.addSuppressed(nestedException); }
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Closes the backing file, if any.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public void close () throws IOException {
+		if (this.fileChannel != null) this.fileChannel.close();
+	}
+
+
+	/**
+	 * Returns the length.
+	 * @return the number of vector elements
+	 */
+	public long length () {
+		return this.length;
+	}
+
+
+	/**
+	 * Returns the element at the given index.
+	 * @param index the element index
+	 * @return the element value
+	 * @throws IndexOutOfBoundsException if the given index is out of bounds
+	 */
+	public double get (final long index) throws IndexOutOfBoundsException {
+		if (index < 0 | index >= this.length) throw new IndexOutOfBoundsException();
+		return this.segments[(int) (index >>> LOG2_SEGMENT_ELEMENTS)].get((int) index & SEGMENT_MASK);
+	}
+
+
+	/**
+	 * Sets the element at the given index.
+	 * @param index the element index
+	 * @param value the element value
+	 * @throws IndexOutOfBoundsException if the given index is out of bounds
+	 */
+	public void set (final long index, final double value) throws IndexOutOfBoundsException {
+		if (index < 0 | index >= this.length) throw new IndexOutOfBoundsException();
+		this.segments[(int) (index >>> LOG2_SEGMENT_ELEMENTS)].put((int) index & SEGMENT_MASK, value);
+	}
+
+
+	/**
+	 * Forces any changes of a file backed vector to be written to the storage device.
+	 */
+	public void force () {
+		if (this.mappings == null) return;
+		for (final MappedByteBuffer mapping : this.mappings) {
+			mapping.force();
+		}
+	}
+
+
+	/**
+	 * Sums two vectors segment by segment, storing the sum within the given result vector. Note
+	 * that the result vector may be one of the operands, and that this operation allocates no
+	 * heap memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public OffHeapVector add (final OffHeapVector left, final OffHeapVector right, final OffHeapVector result) throws NullPointerException, IllegalArgumentException {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
+
+		for (int segmentIndex = 0; segmentIndex < result.segments.length; ++segmentIndex) {
+			final DoubleBuffer leftSegment = left.segments[segmentIndex], rightSegment = right.segments[segmentIndex], resultSegment = result.segments[segmentIndex];
+			for (int index = 0, stop = resultSegment.capacity(); index < stop; ++index) {
+				resultSegment.put(index, leftSegment.get(index) + rightSegment.get(index));
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors, storing the product in row-major order within the given result
+	 * vector, i.e. element {@code [x][y]} is stored at index {@code x * right.length() + y}.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 * @throws ArithmeticException if the product of the operand lengths overflows
+	 */
+	static public OffHeapVector mux (final OffHeapVector left, final OffHeapVector right, final OffHeapVector result) throws NullPointerException, IllegalArgumentException, ArithmeticException {
+		if (Math.multiplyExact(left.length, right.length) != result.length) throw new IllegalArgumentException();
+
+		mux(left, right, (row, column, block) -> {
+			long index = row * right.length + column;
+			while (block.hasRemaining()) {
+				final DoubleBuffer segment = result.segments[(int) (index >>> LOG2_SEGMENT_ELEMENTS)];
+				final int offset = (int) index & SEGMENT_MASK;
+				final int count = Math.min(block.remaining(), segment.capacity() - offset);
+				for (int blockIndex = 0; blockIndex < count; ++blockIndex) {
+					segment.put(offset + blockIndex, block.get());
+				}
+				index += count;
+			}
+		});
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors, streaming the product to the given consumer in row-major order,
+	 * one block of consecutive row elements at a time. This allows outer products that do not
+	 * fit into memory to be processed, for example by writing them to a channel. Note that this
+	 * operation allocates a single direct block buffer, which is reused for each block.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param consumer the block consumer
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public void mux (final OffHeapVector left, final OffHeapVector right, final BlockConsumer consumer) throws NullPointerException {
+		if (consumer == null) throw new NullPointerException();
+		final DoubleBuffer block = ByteBuffer.allocateDirect(BLOCK_ELEMENTS * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+
+		for (long row = 0; row < left.length; ++row) {
+			final double factor = left.get(row);
+
+			long column = 0;
+			for (final DoubleBuffer segment : right.segments) {
+				for (int offset = 0; offset < segment.capacity(); offset += BLOCK_ELEMENTS) {
+					final int count = Math.min(BLOCK_ELEMENTS, segment.capacity() - offset);
+					block.clear();
+					for (int index = 0; index < count; ++index) {
+						block.put(index, factor * segment.get(offset + index));
+					}
+					block.limit(count);
+
+					consumer.accept(row, column, block);
+					column += count;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the number of segments required for the given vector length.
+	 * @param length the vector length
+	 * @return the segment count
+	 * @throws IllegalArgumentException if the given length requires too many segments
+	 */
+	static private int segmentCount (final long length) throws IllegalArgumentException {
+		final long segmentCount = (length + SEGMENT_MASK) >>> LOG2_SEGMENT_ELEMENTS;
+		if (segmentCount > Integer.MAX_VALUE) throw new IllegalArgumentException();
+		return (int) segmentCount;
+	}
+
+
+	/**
+	 * Returns the length of the segment with the given index.
+	 * @param length the vector length
+	 * @param segmentIndex the segment index
+	 * @return the segment length, in number of elements
+	 */
+	static private int segmentLength (final long length, final int segmentIndex) {
+		return (int) Math.min(SEGMENT_ELEMENTS, length - ((long) segmentIndex << LOG2_SEGMENT_ELEMENTS));
+	}
+}
@@ -0,0 +1,195 @@
+package edu.sb.ds.sync;
+
+import java.util.Arrays;
+import edu.sb.ds.util.BitArrays;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Immutable sparse vector of double values. The occupancy of the vector elements is stored as a
+ * bit-array mask (see {@link BitArrays}), while the values of the occupied elements are stored
+ * consecutively in index order. Operations iterate the occupied elements only, using
+ * {@link BitArrays#firstIndex(long[], long, long)} to skip any unoccupied mask words, which makes
+ * their cost proportional to the number of occupied elements plus the number of mask words,
+ * instead of the vector length. Note that the values of occupied elements are usually non-zero,
+ * but may become zero as the result of cancellation or underflow.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class SparseVector {
+	static private final int LOG2_WORD_SIZE = 6;
+
+	private final int length;
+	private final long[] mask;
+	private final double[] values;
+
+
+	/**
+	 * Initializes a new instance from the given dense vector, occupying it's non-zero elements.
+	 * @param vector the dense vector
+	 * @throws NullPointerException if the given argument is {@code null}
+	 */
+	public SparseVector (final double[] vector) throws NullPointerException {
+		this.length = vector.length;
+		this.mask = new long[wordCount(vector.length)];
+
+		int cardinality = 0;
+		for (int index = 0; index < vector.length; ++index) {
+			if (vector[index] != 0) {
+				BitArrays.on(this.mask, index);
+				cardinality += 1;
+			}
+		}
+
+		this.values = new double[cardinality];
+		for (int index = nextIndex(this.mask, this.length, 0), valueIndex = 0; index != -1; index = nextIndex(this.mask, this.length, index + 1)) {
+			this.values[valueIndex++] = vector[index];
+		}
+	}
+
+
+	/**
+	 * Initializes a new instance. Note that the given mask and values are referenced, not copied.
+	 * @param length the vector length
+	 * @param mask the occupancy mask
+	 * @param values the values of the occupied elements, in index order
+	 */
+	private SparseVector (final int length, final long[] mask, final double[] values) {
+		this.length = length;
+		this.mask = mask;
+		this.values = values;
+	}
+
+
+	/**
+	 * Returns the vector length.
+	 * @return the number of vector elements
+	 */
+	public int length () {
+		return this.length;
+	}
+
+
+	/**
+	 * Returns the number of occupied elements.
+	 * @return the cardinality
+	 */
+	public int cardinality () {
+		return this.values.length;
+	}
+
+
+	/**
+	 * Returns the element at the given index.
+	 * @param index the element index
+	 * @return the element value
+	 * @throws IndexOutOfBoundsException if the given index is out of bounds
+	 */
+	public double get (final int index) throws IndexOutOfBoundsException {
+		if (index < 0 | index >= this.length) throw new IndexOutOfBoundsException();
+		if (!BitArrays.get(this.mask, index)) return 0;
+
+		final int valueIndex = index == 0 ? 0 : (int) BitArrays.cardinality(this.mask, 0, index);
+		return this.values[valueIndex];
+	}
+
+
+	/**
+	 * Returns the dense equivalent of this vector.
+	 * @return the dense vector
+	 */
+	public double[] toArray () {
+		final double[] vector = new double[this.length];
+		for (int index = nextIndex(this.mask, this.length, 0), valueIndex = 0; index != -1; index = nextIndex(this.mask, this.length, index + 1)) {
+			vector[index] = this.values[valueIndex++];
+		}
+		return vector;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString () {
+		return Arrays.toString(this.toArray());
+	}
+
+
+	/**
+	 * Sums two sparse vectors. The result occupies every element occupied in either operand.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting sparse vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public SparseVector add (final SparseVector left, final SparseVector right) throws NullPointerException, IllegalArgumentException {
+		if (left.length != right.length) throw new IllegalArgumentException();
+		if (left.length == 0) return left;
+
+		final long[] mask = left.mask.clone();
+		BitArrays.or(mask, right.mask, 0, (long) mask.length << LOG2_WORD_SIZE);
+		final double[] values = new double[(int) BitArrays.cardinality(mask, 0, (long) mask.length << LOG2_WORD_SIZE)];
+
+		int leftIndex = 0, rightIndex = 0, valueIndex = 0;
+		for (int index = nextIndex(mask, left.length, 0); index != -1; index = nextIndex(mask, left.length, index + 1)) {
+			final double leftValue = BitArrays.get(left.mask, index) ? left.values[leftIndex++] : 0;
+			final double rightValue = BitArrays.get(right.mask, index) ? right.values[rightIndex++] : 0;
+			values[valueIndex++] = leftValue + rightValue;
+		}
+
+		return new SparseVector(left.length, mask, values);
+	}
+
+
+	/**
+	 * Multiplexes two sparse vectors, returning the resulting matrix as an array of sparse rows.
+	 * Every row corresponding to an unoccupied left operand element is the same unoccupied
+	 * vector, while every other row shares the right operand's occupancy mask. The computation
+	 * cost and the memory footprint of the result are therefore proportional to the product of
+	 * the operand cardinalities, instead of the product of the operand lengths.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix, as an array of sparse rows
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public SparseVector[] mux (final SparseVector left, final SparseVector right) throws NullPointerException {
+		final SparseVector emptyRow = new SparseVector(right.length, new long[right.mask.length], new double[0]);
+		final SparseVector[] result = new SparseVector[left.length];
+		Arrays.fill(result, emptyRow);
+
+		int leftIndex = 0;
+		for (int index = nextIndex(left.mask, left.length, 0); index != -1; index = nextIndex(left.mask, left.length, index + 1)) {
+			final double factor = left.values[leftIndex++];
+			final double[] values = new double[right.values.length];
+			for (int rightIndex = 0; rightIndex < values.length; ++rightIndex) {
+				values[rightIndex] = factor * right.values[rightIndex];
+			}
+			result[index] = new SparseVector(right.length, right.mask, values);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Returns the index of the first occupied element at or after the given index.
+	 * @param mask the occupancy mask
+	 * @param length the vector length
+	 * @param index the index to start searching from
+	 * @return the index of the next occupied element, or {@code -1} for none
+	 */
+	static private int nextIndex (final long[] mask, final int length, final int index) {
+		return index >= length ? -1 : (int) BitArrays.firstIndex(mask, index, length - index);
+	}
+
+
+	/**
+	 * Returns the number of mask words required for the given vector length.
+	 * @param length the vector length
+	 * @return the word count
+	 */
+	static private int wordCount (final int length) {
+		return (int) (((long) length + Long.SIZE - 1) >> LOG2_WORD_SIZE);
+	}
+}
@@ -0,0 +1,359 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import edu.sb.ds.util.CopyMetrics;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Demonstrates copying a directory tree using a fork/join pool. The source tree is walked using
+ * {@link Files#walk(Path, java.nio.file.FileVisitOption...)}, and the target directories are
+ * created during the walk. Small files are batched, with each batch being copied by a single
+ * task in order to amortize the task scheduling overhead. Large files are split into chunks,
+ * each of which is copied by a separate sub-task using positional reads and writes. File
+ * attributes like modification times and POSIX permissions are preserved, with directory
+ * attributes being copied last because populating a directory alters it's modification time.
+ * Note that this class is declared final because it provides an application entry point, and
+ * therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class TreeCopyMultiThreaded {
+	static private final long SMALL_FILE_SIZE = 0x100000;
+	static private final long BATCH_SIZE = 0x1000000;
+	static private final int BATCH_FILES = 256;
+	static private final int CHUNK_SIZE = 0x4000000;
+	static private final int BUFFER_SIZE = 0x100000;
+	static private final long REPORT_INTERVAL = 1000;
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("TreeCopyMultiThreaded.copy");
+
+
+	/**
+	 * Tree copy progress, which may be queried while the copy is running.
+	 */
+	static public final class Progress {
+		private final LongAdder bytesCopied = new LongAdder();
+		private final LongAdder filesCopied = new LongAdder();
+		private final LongAdder filesSkipped = new LongAdder();
+
+
+		/**
+		 * Returns the number of bytes copied so far.
+		 * @return the byte count
+		 */
+		public long getBytesCopied () {
+			return this.bytesCopied.sum();
+		}
+
+
+		/**
+		 * Returns the number of files copied so far.
+		 * @return the file count
+		 */
+		public long getFilesCopied () {
+			return this.filesCopied.sum();
+		}
+
+
+		/**
+		 * Returns the number of files skipped so far, because they are neither regular files,
+		 * directories, nor symbolic links.
+		 * @return the file count
+		 */
+		public long getFilesSkipped () {
+			return this.filesSkipped.sum();
+		}
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private TreeCopyMultiThreaded () {}
+
+
+	/**
+	 * Copies a directory tree. The first argument is expected to be a qualified source directory
+	 * name, the second a qualified target directory name. The optional third argument is the
+	 * parallelism (default is the number of processors). The aggregate throughput is reported
+	 * once per second while the copy is running.
+	 * @param args the VM arguments
+	 * @throws NumberFormatException if the parallelism is not an integral number
+	 * @throws IOException if there's an I/O related problem
+	 */
+	static public void main (final String[] args) throws NumberFormatException, IOException {
+		final Path sourceDirectory = Paths.get(args[0]);
+		if (!Files.isDirectory(sourceDirectory)) throw new IllegalArgumentException(sourceDirectory.toString());
+
+		final Path sinkDirectory = Paths.get(args[1]);
+		if (sinkDirectory.getParent() != null && !Files.isDirectory(sinkDirectory.getParent())) throw new IllegalArgumentException(sinkDirectory.toString());
+
+		final int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final Progress progress = new Progress();
+		final long timestamp = System.currentTimeMillis();
+
+		final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		final ForkJoinPool threadPool = new ForkJoinPool(parallelism);
+		try {
+			reporter.scheduleAtFixedRate(() -> {
+				final long elapsed = Math.max(1, System.currentTimeMillis() - timestamp);
+				System.out.format("%d files, %d bytes copied, %.1fMiB/s.\n", progress.getFilesCopied(), progress.getBytesCopied(), progress.getBytesCopied() * 1000.0 / elapsed / 0x100000);
+			}, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+
+			copy(sourceDirectory, sinkDirectory, threadPool, progress);
+		} finally {
+			reporter.shutdownNow();
+			threadPool.shutdown();
+		}
+
+		final long elapsed = Math.max(1, System.currentTimeMillis() - timestamp);
+		System.out.format("done, %d files and %d bytes copied in %dms, %.1fMiB/s.\n", progress.getFilesCopied(), progress.getBytesCopied(), elapsed, progress.getBytesCopied() * 1000.0 / elapsed / 0x100000);
+		if (progress.getFilesSkipped() > 0) System.out.format("%d special files skipped.\n", progress.getFilesSkipped());
+	}
+
+
+	/**
+	 * Copies the given source directory tree into the given sink directory, which is created if
+	 * necessary; existing files are replaced. Symbolic links are copied as links, not followed.
+	 * Special files like named pipes or device nodes are skipped and counted within the given
+	 * progress, as copying their content might block indefinitely.
+	 * @param sourceDirectory the source directory path
+	 * @param sinkDirectory the sink directory path
+	 * @param threadPool the fork/join pool executing the copy tasks
+	 * @param progress the progress updated while copying
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public void copy (final Path sourceDirectory, final Path sinkDirectory, final ForkJoinPool threadPool, final Progress progress) throws NullPointerException, IOException {
+		if (threadPool == null | progress == null) throw new NullPointerException();
+
+		final long bytesCopied = progress.getBytesCopied(), timestamp = COPY_METRICS.start();
+		try {
+			copyTree(sourceDirectory, sinkDirectory, threadPool, progress);
+		} finally {
+			COPY_METRICS.stop(timestamp, progress.getBytesCopied() - bytesCopied);
+		}
+	}
+
+
+	/**
+	 * Copies the given source directory tree into the given sink directory, see
+	 * {@link #copy(Path, Path, ForkJoinPool, Progress)}.
+	 * @param sourceDirectory the source directory path
+	 * @param sinkDirectory the sink directory path
+	 * @param threadPool the fork/join pool executing the copy tasks
+	 * @param progress the progress updated while copying
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void copyTree (final Path sourceDirectory, final Path sinkDirectory, final ForkJoinPool threadPool, final Progress progress) throws IOException {
+		final List<Path> directories = new ArrayList<>();
+		final List<Future<?>> futures = new ArrayList<>();
+		Throwable exception = null;
+		try (Stream<Path> stream = Files.walk(sourceDirectory)) {
+			List<Path> batch = new ArrayList<>();
+			long batchSize = 0;
+
+			for (final Path sourcePath : (Iterable<Path>) stream::iterator) {
+				final Path sinkPath = sinkDirectory.resolve(sourceDirectory.relativize(sourcePath).toString());
+				final BasicFileAttributes attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+				if (attributes.isDirectory()) {
+					Files.createDirectories(sinkPath);
+					directories.add(sourcePath);
+				} else if (attributes.isOther()) {
+					progress.filesSkipped.increment();
+				} else if (attributes.isRegularFile() && attributes.size() > SMALL_FILE_SIZE) {
+					futures.add(threadPool.submit(() -> copyLargeFile(sourcePath, sinkPath, attributes.size(), progress)));
+				} else {
+					batch.add(sourcePath);
+					batchSize += attributes.size();
+
+					if (batch.size() >= BATCH_FILES | batchSize >= BATCH_SIZE) {
+						final List<Path> sourcePaths = batch;
+						futures.add(threadPool.submit(() -> copySmallFiles(sourceDirectory, sinkDirectory, sourcePaths, progress)));
+						batch = new ArrayList<>();
+						batchSize = 0;
+					}
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				final List<Path> sourcePaths = batch;
+				futures.add(threadPool.submit(() -> copySmallFiles(sourceDirectory, sinkDirectory, sourcePaths, progress)));
+			}
+		} catch (final UncheckedIOException e) {
+			exception = e.getCause();
+		} catch (final Throwable e) {
+			exception = e;
+		}
+
+		// wait for all tasks even if the walk or any task failed, as they might otherwise outlive this call
+		for (final Future<?> future : futures) {
+			try {
+				Uninterruptibles.get(future);
+			} catch (final ExecutionException e) {
+				final Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+				if (exception == null) {
+					exception = cause;
+				} else {
+					exception.addSuppressed(cause);
+				}
+			}
+		}
+
+		if (exception != null) {
+			if (exception instanceof Error) throw (Error) exception;
+			if (exception instanceof RuntimeException) throw (RuntimeException) exception;
+			if (exception instanceof IOException) throw (IOException) exception;
+			throw new AssertionError();
+		}
+
+		for (final Path sourcePath : directories) {
+			copyAttributes(sourcePath, sinkDirectory.resolve(sourceDirectory.relativize(sourcePath).toString()));
+		}
+	}
+
+
+	/**
+	 * Copies the given small files, including their attributes.
+	 * @param sourceDirectory the source directory path
+	 * @param sinkDirectory the sink directory path
+	 * @param sourcePaths the source file paths
+	 * @param progress the progress updated while copying
+	 * @throws UncheckedIOException if there is an I/O related problem
+	 */
+	static private void copySmallFiles (final Path sourceDirectory, final Path sinkDirectory, final List<Path> sourcePaths, final Progress progress) throws UncheckedIOException {
+		try {
+			for (final Path sourcePath : sourcePaths) {
+				final Path sinkPath = sinkDirectory.resolve(sourceDirectory.relativize(sourcePath).toString());
+				Files.copy(sourcePath, sinkPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+
+				if (!Files.isSymbolicLink(sourcePath)) progress.bytesCopied.add(Files.size(sinkPath));
+				progress.filesCopied.increment();
+			}
+		} catch (final IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+
+	/**
+	 * Copies the given large file in chunks, each of which is copied by a separate sub-task, and
+	 * copies the file attributes afterwards.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @param size the source file size
+	 * @param progress the progress updated while copying
+	 * @throws UncheckedIOException if there is an I/O related problem
+	 */
+	static private void copyLargeFile (final Path sourcePath, final Path sinkPath, final long size, final Progress progress) throws UncheckedIOException {
+		try {
+			try (FileChannel source = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+				try (FileChannel sink = FileChannel.open(sinkPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					// preallocate the target file to prevent concurrent file growth
+					sink.write(ByteBuffer.allocate(1), size - 1);
+
+					final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+					for (long position = 0; position < size; position += CHUNK_SIZE) {
+						final long chunkPosition = position;
+						final long chunkLength = Math.min(CHUNK_SIZE, size - position);
+						tasks.add(ForkJoinTask.adapt(() -> copyChunk(source, sink, chunkPosition, chunkLength, progress)));
+					}
+					// join every chunk task even after a failure, as they might otherwise outlive the channels
+					for (final ForkJoinTask<?> task : tasks) task.fork();
+					Throwable failure = null;
+					for (final ForkJoinTask<?> task : tasks) {
+						try {
+							task.join();
+						} catch (final RuntimeException | Error exception) {
+							if (failure == null) {
+								failure = exception;
+							} else {
+								failure.addSuppressed(exception);
+							}
+						}
+					}
+					if (failure instanceof Error) throw (Error) failure;
+					if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+				}
+			}
+
+			copyAttributes(sourcePath, sinkPath);
+			progress.filesCopied.increment();
+		} catch (final IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+
+	/**
+	 * Copies the given file chunk using positional reads and writes.
+	 * @param source the source channel
+	 * @param sink the sink channel
+	 * @param position the chunk position
+	 * @param length the chunk length
+	 * @param progress the progress updated while copying
+	 * @throws UncheckedIOException if there is an I/O related problem
+	 */
+	static private void copyChunk (final FileChannel source, final FileChannel sink, final long position, final long length, final Progress progress) throws UncheckedIOException {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, length));
+
+		try {
+			for (long offset = position, stop = position + length; offset < stop; ) {
+				buffer.clear().limit((int) Math.min(buffer.capacity(), stop - offset));
+				while (buffer.hasRemaining()) {
+					if (source.read(buffer, offset + buffer.position()) == -1) throw new IOException("source file truncated during copy");
+				}
+
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					final int bytesWritten = sink.write(buffer, offset);
+					progress.bytesCopied.add(bytesWritten);
+					offset += bytesWritten;
+				}
+			}
+		} catch (final IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+
+	/**
+	 * Copies the modification, access and creation times of the given source file to the given
+	 * sink file, plus the POSIX permissions if supported by the sink's file system.
+	 * @param sourcePath the source file path
+	 * @param sinkPath the sink file path
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private void copyAttributes (final Path sourcePath, final Path sinkPath) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+		Files.getFileAttributeView(sinkPath, BasicFileAttributeView.class).setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), attributes.creationTime());
+
+		final PosixFileAttributeView sourceView = Files.getFileAttributeView(sourcePath, PosixFileAttributeView.class);
+		final PosixFileAttributeView sinkView = Files.getFileAttributeView(sinkPath, PosixFileAttributeView.class);
+		if (sourceView != null & sinkView != null) sinkView.setPermissions(sourceView.readAttributes().permissions());
+	}
+}
@@ -0,0 +1,214 @@
+package edu.sb.ds.sync;
+
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Lazy vector expressions based on double arrays. Instead of materializing an intermediate vector
+ * for every operation, as in {@code VectorMathSingleThreaded.mux(VectorMathSingleThreaded.add(a,
+ * b), c)}, expressions build an operation tree that is evaluated in a single fused pass over
+ * blocks of {@value #BLOCK_SIZE} elements. Each block is small enough to stay in the L1 cache while
+ * every operation of the tree is applied to it, which removes both the intermediate allocations
+ * and the additional memory passes. The results are bit-identical to eager evaluation, as every
+ * element is computed by the very same sequence of arithmetic operations. Note that operand arrays
+ * are referenced, not copied, which implies that modifying them before evaluation modifies the
+ * result.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public abstract class VectorExpression {
+	static private final int BLOCK_SIZE = 0x400;
+
+	private final int length;
+	private final int depth;
+
+
+	/**
+	 * Initializes a new instance.
+	 * @param length the vector length
+	 * @param depth the operation tree depth
+	 */
+	private VectorExpression (final int length, final int depth) {
+		this.length = length;
+		this.depth = depth;
+	}
+
+
+	/**
+	 * Returns the vector length.
+	 * @return the number of vector elements
+	 */
+	public int length () {
+		return this.length;
+	}
+
+
+	/**
+	 * Stores the given block of elements of this expression within the given block array.
+	 * @param offset the index of the first element to be evaluated
+	 * @param length the number of elements to be evaluated
+	 * @param block the block array to store the evaluated elements into, beginning at index zero
+	 * @param scratch scratch blocks to be used for operand evaluation, one per tree level
+	 * @param level the tree level of this expression
+	 */
+	protected abstract void evaluate (int offset, int length, double[] block, double[][] scratch, int level);
+
+
+	/**
+	 * Evaluates this expression within a single fused pass.
+	 * @return the resulting vector
+	 */
+	public double[] evaluate () {
+		return this.evaluate(new double[this.length]);
+	}
+
+
+	/**
+	 * Evaluates this expression within a single fused pass, storing the resulting elements within
+	 * the given result vector. Note that the result vector may be referenced by this expression,
+	 * as every block is read before it is written.
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws IllegalArgumentException if the given result length does not match this expression's
+	 *         length
+	 */
+	public double[] evaluate (final double[] result) throws NullPointerException, IllegalArgumentException {
+		if (result.length != this.length) throw new IllegalArgumentException();
+
+		final double[][] scratch = new double[this.depth][BLOCK_SIZE];
+		final double[] block = new double[BLOCK_SIZE];
+		for (int offset = 0; offset < this.length; offset += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, this.length - offset);
+			this.evaluate(offset, length, block, scratch, 0);
+			System.arraycopy(block, 0, result, offset, length);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a leaf expression based on the given vector.
+	 * @param vector the vector
+	 * @return the expression
+	 * @throws NullPointerException if the given argument is {@code null}
+	 */
+	static public VectorExpression of (final double[] vector) throws NullPointerException {
+		return new Operand(vector);
+	}
+
+
+	/**
+	 * Returns an expression representing the sum of the given expressions.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the expression
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public VectorExpression add (final VectorExpression left, final VectorExpression right) throws NullPointerException, IllegalArgumentException {
+		if (left.length != right.length) throw new IllegalArgumentException();
+		return new Sum(left, right);
+	}
+
+
+	/**
+	 * Evaluates the multiplex of two expressions within a single fused pass, without materializing
+	 * the left operand. The right operand is evaluated once beforehand, as every result row
+	 * requires all of it's elements.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public double[][] mux (final VectorExpression left, final VectorExpression right) throws NullPointerException {
+		final double[][] result = new double[left.length][];
+		final double[] rightVector = right instanceof Operand ? ((Operand) right).vector : right.evaluate();
+
+		final double[][] scratch = new double[left.depth][BLOCK_SIZE];
+		final double[] block = new double[BLOCK_SIZE];
+		for (int offset = 0; offset < left.length; offset += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, left.length - offset);
+			left.evaluate(offset, length, block, scratch, 0);
+
+			for (int blockIndex = 0; blockIndex < length; ++blockIndex) {
+				final double factor = block[blockIndex];
+				final double[] row = result[offset + blockIndex] = new double[rightVector.length];
+				for (int rightIndex = 0; rightIndex < rightVector.length; ++rightIndex) {
+					row[rightIndex] = factor * rightVector[rightIndex];
+				}
+			}
+		}
+		return result;
+	}
+
+
+
+	/**
+	 * Leaf expression referencing an operand vector.
+	 */
+	static private class Operand extends VectorExpression {
+		private final double[] vector;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param vector the vector
+		 * @throws NullPointerException if the given argument is {@code null}
+		 */
+		public Operand (final double[] vector) throws NullPointerException {
+			super(vector.length, 0);
+			this.vector = vector;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void evaluate (final int offset, final int length, final double[] block, final double[][] scratch, final int level) {
+			System.arraycopy(this.vector, offset, block, 0, length);
+		}
+	}
+
+
+
+	/**
+	 * Expression representing the sum of two operand expressions.
+	 */
+	static private class Sum extends VectorExpression {
+		private final VectorExpression left, right;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param left the first operand
+		 * @param right the second operand
+		 */
+		public Sum (final VectorExpression left, final VectorExpression right) {
+			super(left.length(), Math.max(left.depth, right.depth) + 1);
+			this.left = left;
+			this.right = right;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void evaluate (final int offset, final int length, final double[] block, final double[][] scratch, final int level) {
+			if (this.left instanceof Operand & this.right instanceof Operand) {
+				final double[] leftVector = ((Operand) this.left).vector, rightVector = ((Operand) this.right).vector;
+				for (int index = 0; index < length; ++index) {
+					block[index] = leftVector[offset + index] + rightVector[offset + index];
+				}
+			} else {
+				final double[] rightBlock = scratch[level];
+				this.left.evaluate(offset, length, block, scratch, level + 1);
+				this.right.evaluate(offset, length, rightBlock, scratch, level + 1);
+				for (int index = 0; index < length; ++index) {
+					block[index] = block[index] + rightBlock[index];
+				}
+			}
+		}
+	}
+}
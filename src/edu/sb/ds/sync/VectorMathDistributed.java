@@ -0,0 +1,276 @@
+package edu.sb.ds.sync;
+
+import java.net.MalformedURLException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import edu.sb.ds.util.Copyright;
+import edu.sb.ds.util.Uninterruptibles;
+
+
+/**
+ * Coordinator distributing vector arithmetics over multiple RMI workers, see
+ * {@link VectorMathServer}. Operands are split into partitions, each being shipped to a worker
+ * together with the operand slices it requires, and the partition results are gathered in order.
+ * A partition failing with a {@link RemoteException} is retried on the next worker, up to
+ * {@value #MAXIMUM_ATTEMPTS} attempts. The number of partitions in flight is bounded to twice the
+ * number of workers, which allows outer products too large for a single node to be streamed to a
+ * consumer block of rows by block of rows. Note that this class is declared final because it
+ * provides an application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class VectorMathDistributed implements AutoCloseable {
+	static private final int MAXIMUM_ATTEMPTS = 3;
+	static private final int PARTITION_ELEMENTS = 0x100000;
+
+	private final List<VectorMathService> workers;
+	private final ExecutorService threadPool;
+
+
+	/**
+	 * Remote operation performed on a worker.
+	 * @param <T> the result type
+	 */
+	@FunctionalInterface
+	static private interface RemoteOperation<T> {
+		T invoke (VectorMathService worker) throws RemoteException;
+	}
+
+
+	/**
+	 * Initializes a new instance.
+	 * @param workers the workers
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws IllegalArgumentException if the given argument is empty
+	 */
+	public VectorMathDistributed (final VectorMathService... workers) throws NullPointerException, IllegalArgumentException {
+		if (workers.length == 0) throw new IllegalArgumentException();
+
+		this.workers = List.of(workers);
+		this.threadPool = Executors.newFixedThreadPool(2 * workers.length);
+	}
+
+
+	/**
+	 * Returns a new instance based on the workers bound under the given RMI service URLs, like
+	 * {@code rmi://localhost:1099/vector-math}.
+	 * @param serviceURLs the service URLs
+	 * @return the coordinator created
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws IllegalArgumentException if the given argument is empty
+	 * @throws MalformedURLException if any of the given service URLs is malformed
+	 * @throws NotBoundException if any of the given service URLs is not bound
+	 * @throws RemoteException if there is an RMI related problem
+	 */
+	static public VectorMathDistributed lookup (final String... serviceURLs) throws NullPointerException, IllegalArgumentException, MalformedURLException, NotBoundException, RemoteException {
+		final VectorMathService[] workers = new VectorMathService[serviceURLs.length];
+		for (int index = 0; index < workers.length; ++index) {
+			workers[index] = (VectorMathService) Naming.lookup(serviceURLs[index]);
+		}
+		return new VectorMathDistributed(workers);
+	}
+
+
+	/**
+	 * Closes this coordinator's thread pool.
+	 */
+	public void close () {
+		this.threadPool.shutdownNow();
+	}
+
+
+	/**
+	 * Sums two vectors using the workers.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws RemoteException if a partition failed on every attempt
+	 */
+	public double[] add (final double[] left, final double[] right) throws NullPointerException, IllegalArgumentException, RemoteException {
+		if (left.length != right.length) throw new IllegalArgumentException();
+		final double[] result = new double[left.length];
+		final int partitionSize = Math.max(1, Math.min(PARTITION_ELEMENTS, (left.length + this.workers.size() - 1) / this.workers.size()));
+
+		final Queue<Future<double[]>> futures = new ArrayDeque<>();
+		try {
+			for (int offset = 0, partition = 0, gatherOffset = 0; gatherOffset < left.length; ) {
+				while (offset < left.length & futures.size() < 2 * this.workers.size()) {
+					final double[] leftSlice = Arrays.copyOfRange(left, offset, Math.min(left.length, offset + partitionSize));
+					final double[] rightSlice = Arrays.copyOfRange(right, offset, offset + leftSlice.length);
+					futures.add(this.submit(partition++, worker -> worker.add(leftSlice, rightSlice)));
+					offset += leftSlice.length;
+				}
+
+				final double[] slice = gather(futures.remove());
+				System.arraycopy(slice, 0, result, gatherOffset, slice.length);
+				gatherOffset += slice.length;
+			}
+		} catch (final Throwable exception) {
+			cancel(futures);
+			throw exception;
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors using the workers.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws RemoteException if a partition failed on every attempt
+	 */
+	public double[][] mux (final double[] left, final double[] right) throws NullPointerException, RemoteException {
+		final double[][] result = new double[left.length][];
+		this.mux(left, right, (row, column, rows, columns, tile) -> {
+			for (int tileRow = 0; tileRow < rows; ++tileRow) {
+				result[row + tileRow] = Arrays.copyOfRange(tile, tileRow * columns, (tileRow + 1) * columns);
+			}
+		});
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors using the workers, streaming the result to the given consumer in
+	 * blocks of complete rows, in row order. Each worker is shipped a slice of the left operand,
+	 * plus the complete right operand.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param consumer the consumer of blocks of result rows
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws RemoteException if a partition failed on every attempt
+	 */
+	public void mux (final double[] left, final double[] right, final VectorMathTiled.TileConsumer consumer) throws NullPointerException, RemoteException {
+		if (consumer == null) throw new NullPointerException();
+		final int rowsPerPartition = Math.max(1, Math.min(PARTITION_ELEMENTS / Math.max(1, right.length), (left.length + this.workers.size() - 1) / this.workers.size()));
+
+		final Queue<Future<double[]>> futures = new ArrayDeque<>();
+		try {
+			for (int offset = 0, partition = 0, gatherOffset = 0; gatherOffset < left.length; ) {
+				while (offset < left.length & futures.size() < 2 * this.workers.size()) {
+					final double[] leftSlice = Arrays.copyOfRange(left, offset, Math.min(left.length, offset + rowsPerPartition));
+					futures.add(this.submit(partition++, worker -> worker.mux(leftSlice, right)));
+					offset += leftSlice.length;
+				}
+
+				final int rows = Math.min(rowsPerPartition, left.length - gatherOffset);
+				consumer.accept(gatherOffset, 0, rows, right.length, gather(futures.remove()));
+				gatherOffset += rows;
+			}
+		} catch (final Throwable exception) {
+			cancel(futures);
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Submits the given operation for asynchronous execution, starting with the worker associated
+	 * with the given partition, and retrying on the following workers if the operation fails with
+	 * a {@link RemoteException}.
+	 * @param <T> the result type
+	 * @param partition the partition index
+	 * @param operation the remote operation
+	 * @return the future result
+	 */
+	private <T> Future<T> submit (final int partition, final RemoteOperation<T> operation) {
+		final Callable<T> task = () -> {
+			RemoteException exception = null;
+			for (int attempt = 0; attempt < MAXIMUM_ATTEMPTS; ++attempt) {
+				final VectorMathService worker = this.workers.get((partition + attempt) % this.workers.size());
+				try {
+					return operation.invoke(worker);
+				} catch (final RemoteException e) {
+					if (exception != null) e.addSuppressed(exception);
+					exception = e;
+				}
+			}
+			throw exception;
+		};
+
+		return this.threadPool.submit(task);
+	}
+
+
+	/**
+	 * Waits for the given future to complete, and returns it's result.
+	 * @param <T> the result type
+	 * @param future the future
+	 * @return the future's result
+	 * @throws RemoteException if the partition failed on every attempt
+	 */
+	static private <T> T gather (final Future<T> future) throws RemoteException {
+		try {
+			return Uninterruptibles.get(future);
+		} catch (final ExecutionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof Error) throw (Error) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof RemoteException) throw (RemoteException) cause;
+			throw new AssertionError();
+		}
+	}
+
+
+	/**
+	 * Cancels the given futures, which prevents partitions still queued from being started after
+	 * an operation failed.
+	 * @param futures the futures
+	 */
+	static private void cancel (final Queue<? extends Future<?>> futures) {
+		for (final Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+
+	/**
+	 * Runs both distributed vector summation and vector multiplexing for demo purposes. The first
+	 * argument is the operand size, the following ones are the RMI worker service URLs.
+	 * @param args the argument array
+	 * @throws IndexOutOfBoundsException if less than two arguments are passed
+	 * @throws NumberFormatException if the given size is not an integral number
+	 * @throws MalformedURLException if any of the given service URLs is malformed
+	 * @throws NotBoundException if any of the given service URLs is not bound
+	 * @throws RemoteException if there is an RMI related problem
+	 */
+	static public void main (final String[] args) throws IndexOutOfBoundsException, NumberFormatException, MalformedURLException, NotBoundException, RemoteException {
+		if (args.length < 2) throw new IndexOutOfBoundsException();
+		final int size = Integer.parseInt(args[0]);
+		final String[] serviceURLs = Arrays.copyOfRange(args, 1, args.length);
+		System.out.format("Computation is distributed over %d workers for operand size %d.\n", serviceURLs.length, size);
+
+		final double[] a = new double[size], b = new double[size];
+		for (int index = 0; index < size; ++index) {
+			a[index] = index + 1.0;
+			b[index] = index + 2.0;
+		}
+
+		try (VectorMathDistributed coordinator = lookup(serviceURLs)) {
+			final long timestamp0 = System.nanoTime();
+			final double[] sum = coordinator.add(a, b);
+			final long timestamp1 = System.nanoTime();
+			final double[][] mux = coordinator.mux(a, b);
+			final long timestamp2 = System.nanoTime();
+
+			System.out.format("a + b computed in %.4fms.\n", (timestamp1 - timestamp0) * 1E-6);
+			System.out.format("a x b computed in %.4fms.\n", (timestamp2 - timestamp1) * 1E-6);
+
+			final boolean identical = Arrays.equals(sum, VectorMathSingleThreaded.add(a, b)) & Arrays.deepEquals(mux, VectorMathSingleThreaded.mux(a, b));
+			System.out.format("results are %sidentical to local computation.\n", identical ? "" : "NOT ");
+		}
+	}
+}
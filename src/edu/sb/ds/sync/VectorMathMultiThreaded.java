@@ -0,0 +1,254 @@
+package edu.sb.ds.sync;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Demonstrator for multi threading vector arithmetics based on double arrays. Work is split into
+ * fork/join tasks processed by a work-stealing pool, which allows this implementation to use all
+ * available processor cores within a system. Operands below a size threshold are delegated to
+ * {@link VectorMathSingleThreaded}, as task creation would outweigh the computation itself. Every
+ * result element is computed by the very same arithmetic operation as in the single threaded
+ * variant, therefore results are bit-identical. Also note that this class is declared final
+ * because it provides an application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class VectorMathMultiThreaded {
+	static private final int DEFAULT_SIZE = 100;
+	static private final int WARMUP_LOOPS = 25000;
+	static private final int TIMING_LOOPS = 10000;
+	static private final int CACHE_LINE_ELEMENTS = 64 / Double.BYTES;
+	static private final int ADD_THRESHOLD = 0x8000;
+	static private final int MUX_THRESHOLD = 0x8000;
+	static private final ForkJoinPool THREAD_POOL = ForkJoinPool.commonPool();
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private VectorMathMultiThreaded () {}
+
+
+	/**
+	 * Sums two vectors using multiple threads. Chunk boundaries are aligned to multiples of a
+	 * 64 byte cache line, which prevents adjacent chunks processed by different threads from
+	 * writing into the same cache line (false sharing).
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public double[] add (final double[] left, final double[] right) {
+		if (left.length != right.length) throw new IllegalArgumentException();
+		if (left.length < ADD_THRESHOLD) return VectorMathSingleThreaded.add(left, right);
+
+		final double[] result = new double[left.length];
+		THREAD_POOL.invoke(new AddTask(left, right, result, 0, left.length, chunkSize(left.length)));
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors using multiple threads. Work is split into blocks of consecutive
+	 * result rows.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public double[][] mux (final double[] left, final double[] right) {
+		if ((long) left.length * right.length < MUX_THRESHOLD) return VectorMathSingleThreaded.mux(left, right);
+
+		final double[][] result = new double[left.length][right.length];
+		final int rowsPerBlock = Math.max(1, MUX_THRESHOLD / Math.max(1, right.length));
+		THREAD_POOL.invoke(new MuxTask(left, right, result, 0, left.length, rowsPerBlock));
+		return result;
+	}
+
+
+	/**
+	 * Returns the chunk size for the given vector length, aiming at a few chunks per available
+	 * processor to allow for work-stealing, and rounded up to a multiple of a cache line.
+	 * @param length the vector length
+	 * @return the chunk size, in number of elements
+	 */
+	static private int chunkSize (final int length) {
+		final int chunkCount = THREAD_POOL.getParallelism() * 4;
+		final int chunkSize = Math.max(ADD_THRESHOLD / 4, (length + chunkCount - 1) / chunkCount);
+		return (chunkSize + CACHE_LINE_ELEMENTS - 1) / CACHE_LINE_ELEMENTS * CACHE_LINE_ELEMENTS;
+	}
+
+
+
+	/**
+	 * Fork/join task summing a range of vector elements.
+	 */
+	static private class AddTask extends RecursiveAction {
+		static private final long serialVersionUID = 1L;
+
+		private final double[] left, right, result;
+		private final int offset, length, chunkSize;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param left the first operand
+		 * @param right the second operand
+		 * @param result the result
+		 * @param offset the index of the first element to process
+		 * @param length the number of elements to process
+		 * @param chunkSize the maximum number of elements to process without splitting
+		 */
+		public AddTask (final double[] left, final double[] right, final double[] result, final int offset, final int length, final int chunkSize) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.offset = offset;
+			this.length = length;
+			this.chunkSize = chunkSize;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void compute () {
+			if (this.length <= this.chunkSize) {
+				for (int index = this.offset, stop = this.offset + this.length; index < stop; ++index) {
+					this.result[index] = this.left[index] + this.right[index];
+				}
+			} else {
+				final int chunkCount = (this.length + this.chunkSize - 1) / this.chunkSize;
+				final int leftLength = chunkCount / 2 * this.chunkSize;
+				invokeAll(
+					new AddTask(this.left, this.right, this.result, this.offset, leftLength, this.chunkSize),
+					new AddTask(this.left, this.right, this.result, this.offset + leftLength, this.length - leftLength, this.chunkSize)
+				);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Fork/join task multiplexing a block of result rows.
+	 */
+	static private class MuxTask extends RecursiveAction {
+		static private final long serialVersionUID = 1L;
+
+		private final double[] left, right;
+		private final double[][] result;
+		private final int offset, length, blockSize;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param left the first operand
+		 * @param right the second operand
+		 * @param result the result
+		 * @param offset the index of the first row to process
+		 * @param length the number of rows to process
+		 * @param blockSize the maximum number of rows to process without splitting
+		 */
+		public MuxTask (final double[] left, final double[] right, final double[][] result, final int offset, final int length, final int blockSize) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.offset = offset;
+			this.length = length;
+			this.blockSize = blockSize;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void compute () {
+			if (this.length <= this.blockSize) {
+				for (int leftIndex = this.offset, stop = this.offset + this.length; leftIndex < stop; ++leftIndex) {
+					final double leftValue = this.left[leftIndex];
+					final double[] row = this.result[leftIndex];
+					for (int rightIndex = 0; rightIndex < this.right.length; ++rightIndex) {
+						row[rightIndex] = leftValue * this.right[rightIndex];
+					}
+				}
+			} else {
+				final int leftLength = this.length / 2;
+				invokeAll(
+					new MuxTask(this.left, this.right, this.result, this.offset, leftLength, this.blockSize),
+					new MuxTask(this.left, this.right, this.result, this.offset + leftLength, this.length - leftLength, this.blockSize)
+				);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Runs both vector summation and vector multiplexing for demo purposes.
+	 * @param args the argument array
+	 */
+	static public void main (final String[] args) {
+		final int size = args.length == 0 ? DEFAULT_SIZE : Integer.parseInt(args[0]);
+		System.out.format("Computation is performed using up to %d threads for operand size %d.\n", THREAD_POOL.getParallelism(), size);
+
+		// initialize operand vectors
+		final double[] a = new double[size], b = new double[size];
+		for (int index = 0; index < size; ++index) {
+			a[index] = index + 1.0;
+			b[index] = index + 2.0;
+		}
+
+		// Warm-up phase to force hot-spot translation of byte-code into machine code, code-optimization, etc!
+		int resultHash = 0;
+		for (int loop = 0; loop < WARMUP_LOOPS; ++loop) {
+			double[] c = add(a, b);
+			resultHash ^= c.hashCode();
+
+			double[][] d = mux(a, b);
+			resultHash ^= d.hashCode();
+		}
+		System.out.format("warm-up phase ended with result hash %d.\n", resultHash);
+
+		final long timestamp0 = System.nanoTime();
+		for (int loop = 0; loop < TIMING_LOOPS; ++loop) {
+			final double[] sum = add(a, b);
+			resultHash ^= sum.hashCode();
+		}
+
+		final long timestamp1 = System.nanoTime();
+		for (int loop = 0; loop < TIMING_LOOPS; ++loop) {
+			final double[][] mux = mux(a, b);
+			resultHash ^= mux.hashCode();
+		}
+		final long timestamp2 = System.nanoTime();
+		System.out.format("timing phase ended with result hash %d.\n", resultHash);
+		System.out.format("a + b computed in %.4fms.\n", (timestamp1 - timestamp0) * 1E-6 / TIMING_LOOPS);
+		System.out.format("a x b computed in %.4fms.\n", (timestamp2 - timestamp1) * 1E-6 / TIMING_LOOPS);
+
+		final boolean identical = Arrays.equals(add(a, b), VectorMathSingleThreaded.add(a, b)) & Arrays.deepEquals(mux(a, b), VectorMathSingleThreaded.mux(a, b));
+		System.out.format("results are %sidentical to single threaded computation.\n", identical ? "" : "NOT ");
+
+		if (size <= 100) {
+			final double[] sum = add(a, b);
+			final double[][] mux = mux(a, b);
+			System.out.print("a = ");
+			System.out.println(Arrays.toString(a));
+			System.out.print("b = ");
+			System.out.println(Arrays.toString(b));
+			System.out.print("a + b = ");
+			System.out.println(Arrays.toString(sum));
+			System.out.print("a x b = [");
+			for (int index = 0; index < mux.length; ++index) {
+				System.out.print(Arrays.toString(mux[index]));
+			}
+			System.out.println("]");
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package edu.sb.ds.sync;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * RMI worker exporting vector arithmetics as a remote service. Summation is delegated to
+ * {@link VectorMathMultiThreaded}, while multiplexing is delegated to the flat kernel of
+ * {@link VectorMathSingleThreaded}, because the result is shipped as a flat row-major array, and
+ * because the coordinator already spreads multiplexing over the workers partition by partition.
+ * Multiple workers may run within separate JVMs on the same host, as long as each uses a distinct
+ * registry port. Note that this class is declared final because it provides an application entry
+ * point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class VectorMathServer implements VectorMathService {
+	static public final String DEFAULT_SERVICE_NAME = "vector-math";
+	static public final int DEFAULT_REGISTRY_PORT = Registry.REGISTRY_PORT;
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double[] add (final double[] left, final double[] right) throws NullPointerException, IllegalArgumentException {
+		return VectorMathMultiThreaded.add(left, right);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double[] mux (final double[] left, final double[] right) throws NullPointerException, IllegalArgumentException {
+		final long size = (long) left.length * right.length;
+		if (size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException();
+		return VectorMathSingleThreaded.mux(left, right, new double[(int) size]);
+	}
+
+
+	/**
+	 * Application entry point. The optional arguments are the registry port, and the service
+	 * name. The worker runs until "quit" is entered.
+	 * @param args the arguments
+	 * @throws NumberFormatException if the given port is not an integral number
+	 * @throws RemoteException if there is an RMI related problem
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public void main (final String[] args) throws NumberFormatException, RemoteException, IOException {
+		final int registryPort = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REGISTRY_PORT;
+		final String serviceName = args.length > 1 ? args[1] : DEFAULT_SERVICE_NAME;
+
+		final VectorMathServer server = new VectorMathServer();
+		final Registry registry = LocateRegistry.createRegistry(registryPort);
+		try {
+			final VectorMathService stub = (VectorMathService) UnicastRemoteObject.exportObject(server, 0);
+			registry.rebind(serviceName, stub);
+			System.out.format("Vector math worker bound as rmi://localhost:%d/%s, enter \"quit\" to stop.\n", registryPort, serviceName);
+
+			final BufferedReader charSource = new BufferedReader(new InputStreamReader(System.in));
+			for (String line = charSource.readLine(); line != null && !"quit".equals(line.trim()); line = charSource.readLine());
+		} finally {
+			try { UnicastRemoteObject.unexportObject(server, true); } catch (final NoSuchObjectException exception) {}
+			UnicastRemoteObject.unexportObject(registry, true);
+		}
+	}
+}
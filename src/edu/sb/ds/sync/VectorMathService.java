@@ -0,0 +1,39 @@
+package edu.sb.ds.sync;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Remote interface for vector arithmetics based on double arrays, allowing work to be distributed
+ * over multiple worker JVMs using Java RMI.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public interface VectorMathService extends Remote {
+
+	/**
+	 * Sums two vectors.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws RemoteException if there is an RMI related problem
+	 */
+	double[] add (double[] left, double[] right) throws NullPointerException, IllegalArgumentException, RemoteException;
+
+
+	/**
+	 * Multiplexes two vectors, returning the resulting matrix in row-major order, i.e. element
+	 * {@code [x][y]} is stored at index {@code x * right.length + y}. A flat array is used because
+	 * it serializes considerably faster than a jagged one.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting flat matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the resulting matrix would be too large for an array
+	 * @throws RemoteException if there is an RMI related problem
+	 */
+	double[] mux (double[] left, double[] right) throws NullPointerException, IllegalArgumentException, RemoteException;
+}
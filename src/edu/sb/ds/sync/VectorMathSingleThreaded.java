@@ -1,5 +1,8 @@
 package edu.sb.ds.sync;
 
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.Arrays;
 import edu.sb.ds.util.Copyright;
 
@@ -7,13 +10,18 @@ import edu.sb.ds.util.Copyright;
 /**
  * Demonstrator for single threading vector arithmetics based on double arrays. Note that of all
  * available processor cores within a system, this implementation is only capable of using one! Also
- * note that this class is declared final because it provides an application entry point, and
- * therefore not supposed to be extended.
+ * note that the kernels consist of simple counted loops with the left operand element hoisted out of
+ * the inner loop, which allows the HotSpot JIT's superword optimization to translate them into
+ * packed SIMD instructions where available; explicit vectorization would require the incubating
+ * {@code jdk.incubator.vector} API, which is not available for this project's Java 11 target.
+ * Finally, note that this class is declared final because it provides an application entry point,
+ * and therefore not supposed to be extended.
  */
 @Copyright(year=2008, holders="Sascha Baumeister")
 public final class VectorMathSingleThreaded {
 	static private final int DEFAULT_SIZE = 100;
 	static private final int WARMUP_LOOPS = 25000;
+	static private final int TIMING_LOOPS = 10000;
 
 	/**
 	 * Sums two vectors within a single thread.
@@ -24,8 +32,23 @@ public final class VectorMathSingleThreaded {
 	 * @throws IllegalArgumentException if the given parameters do not share the same length
 	 */
 	static public double[] add (final double[] left, final double[] right) {
-		if (left.length != right.length) throw new IllegalArgumentException();
-		final double[] result = new double[left.length];
+		return add(left, right, new double[left.length]);
+	}
+
+
+	/**
+	 * Sums two vectors within a single thread, storing the sum within the given result vector.
+	 * Note that the result vector may be one of the operands, and that this operation allocates
+	 * no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public double[] add (final double[] left, final double[] right, final double[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
 		for (int x = 0; x < left.length; ++x) {
 			result[x] = left[x] + right[x];
 		}
@@ -41,10 +64,478 @@ public final class VectorMathSingleThreaded {
 	 * @throws NullPointerException if one of the given parameters is {@code null}
 	 */
 	static public double[][] mux (final double[] left, final double[] right) {
-		final double[][] result = new double[left.length][right.length];
+		return mux(left, right, new double[left.length][right.length]);
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread, storing the product within the given result
+	 * matrix. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result matrix, with one row per left operand element, and one column per
+	 *        right operand element
+	 * @return the given result matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result matrix dimensions do not match the
+	 *         operand lengths
+	 */
+	static public double[][] mux (final double[] left, final double[] right, final double[][] result) {
+		if (result.length != left.length) throw new IllegalArgumentException();
+		for (int x = 0; x < left.length; ++x) {
+			final double[] row = result[x];
+			if (row.length != right.length) throw new IllegalArgumentException();
+
+			final double factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread, storing the product in row-major order
+	 * within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Note that this operation allocates no memory, and that the
+	 * flat layout avoids both the per-row array headers and the row indirections of a jagged
+	 * matrix.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 */
+	static public double[] mux (final double[] left, final double[] right, final double[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final double factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result[offset + rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread, storing the product in row-major order
+	 * within the given result buffer, starting at it's current position. Passing a direct buffer
+	 * keeps the result off the Java heap. Note that this operation allocates no memory, and that
+	 * the buffer position is advanced by the number of elements written.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result buffer
+	 * @return the given result buffer
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws BufferOverflowException if the given buffer has less remaining elements than the
+	 *         product of the operand lengths
+	 * @throws ReadOnlyBufferException if the given buffer is read-only
+	 */
+	static public DoubleBuffer mux (final double[] left, final double[] right, final DoubleBuffer result) throws BufferOverflowException, ReadOnlyBufferException {
+		if ((long) left.length * right.length > result.remaining()) throw new BufferOverflowException();
+		for (int x = 0; x < left.length; ++x) {
+			final double factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result.put(factor * right[rightIndex]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sums two float vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public float[] add (final float[] left, final float[] right) {
+		return add(left, right, new float[left.length]);
+	}
+
+
+	/**
+	 * Sums two float vectors within a single thread, storing the sum within the given result
+	 * vector. Note that the result vector may be one of the operands, and that this operation
+	 * allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public float[] add (final float[] left, final float[] right, final float[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0; x < left.length; ++x) {
+			result[x] = left[x] + right[x];
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two float vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public float[][] mux (final float[] left, final float[] right) {
+		final float[][] result = new float[left.length][right.length];
+		for (int x = 0; x < left.length; ++x) {
+			final float[] row = result[x];
+			final float factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two float vectors within a single thread, storing the product in row-major
+	 * order within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 */
+	static public float[] mux (final float[] left, final float[] right, final float[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final float factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result[offset + rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sums two int vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public int[] add (final int[] left, final int[] right) {
+		return add(left, right, new int[left.length]);
+	}
+
+
+	/**
+	 * Sums two int vectors within a single thread, storing the sum within the given result
+	 * vector. Note that the result vector may be one of the operands, and that this operation
+	 * allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public int[] add (final int[] left, final int[] right, final int[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0; x < left.length; ++x) {
+			result[x] = left[x] + right[x];
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two int vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public int[][] mux (final int[] left, final int[] right) {
+		final int[][] result = new int[left.length][right.length];
+		for (int x = 0; x < left.length; ++x) {
+			final int[] row = result[x];
+			final int factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two int vectors within a single thread, storing the product in row-major
+	 * order within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 */
+	static public int[] mux (final int[] left, final int[] right, final int[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final int factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result[offset + rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sums two long vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public long[] add (final long[] left, final long[] right) {
+		return add(left, right, new long[left.length]);
+	}
+
+
+	/**
+	 * Sums two long vectors within a single thread, storing the sum within the given result
+	 * vector. Note that the result vector may be one of the operands, and that this operation
+	 * allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 */
+	static public long[] add (final long[] left, final long[] right, final long[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0; x < left.length; ++x) {
+			result[x] = left[x] + right[x];
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two long vectors within a single thread.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public long[][] mux (final long[] left, final long[] right) {
+		final long[][] result = new long[left.length][right.length];
+		for (int x = 0; x < left.length; ++x) {
+			final long[] row = result[x];
+			final long factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two long vectors within a single thread, storing the product in row-major
+	 * order within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 */
+	static public long[] mux (final long[] left, final long[] right, final long[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final long factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result[offset + rightIndex] = factor * right[rightIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sums two int vectors within a single thread, detecting integer overflow.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public int[] addExact (final int[] left, final int[] right) {
+		return addExact(left, right, new int[left.length]);
+	}
+
+
+	/**
+	 * Sums two int vectors within a single thread, storing the sum within the given result
+	 * vector. Unlike the unchecked variant, integer overflow is detected and reported. Note that
+	 * the result vector may be one of the operands, and that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public int[] addExact (final int[] left, final int[] right, final int[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
 		for (int x = 0; x < left.length; ++x) {
+			result[x] = Math.addExact(left[x], right[x]);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two int vectors within a single thread, detecting integer overflow.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public int[][] muxExact (final int[] left, final int[] right) {
+		final int[][] result = new int[left.length][right.length];
+		for (int x = 0; x < left.length; ++x) {
+			final int[] row = result[x];
+			final int factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = Math.multiplyExact(factor, right[rightIndex]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two int vectors within a single thread, storing the product in row-major
+	 * order within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Unlike the unchecked variant, integer overflow is detected and
+	 * reported. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public int[] muxExact (final int[] left, final int[] right, final int[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final int factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				result[offset + rightIndex] = Math.multiplyExact(factor, right[rightIndex]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Sums two long vectors within a single thread, detecting integer overflow.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public long[] addExact (final long[] left, final long[] right) {
+		return addExact(left, right, new long[left.length]);
+	}
+
+
+	/**
+	 * Sums two long vectors within a single thread, storing the sum within the given result
+	 * vector. Unlike the unchecked variant, integer overflow is detected and reported. Note that
+	 * the result vector may be one of the operands, and that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result vector
+	 * @return the given result vector
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given parameters do not share the same length
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public long[] addExact (final long[] left, final long[] right, final long[] result) {
+		if (left.length != right.length | left.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0; x < left.length; ++x) {
+			result[x] = Math.addExact(left[x], right[x]);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two long vectors within a single thread, detecting integer overflow.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public long[][] muxExact (final long[] left, final long[] right) {
+		final long[][] result = new long[left.length][right.length];
+		for (int x = 0; x < left.length; ++x) {
+			final long[] row = result[x];
+			final long factor = left[x];
+			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
+				row[rightIndex] = Math.multiplyExact(factor, right[rightIndex]);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two long vectors within a single thread, storing the product in row-major
+	 * order within the given flat result array, i.e. element {@code [x][y]} is stored at index
+	 * {@code x * right.length + y}. Unlike the unchecked variant, integer overflow is detected and
+	 * reported. Note that this operation allocates no memory.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the flat result matrix
+	 * @return the given result array
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result length is not the product of the
+	 *         operand lengths
+	 * @throws ArithmeticException if the result of any element operation overflows
+	 */
+	static public long[] muxExact (final long[] left, final long[] right, final long[] result) {
+		if ((long) left.length * right.length != result.length) throw new IllegalArgumentException();
+		for (int x = 0, offset = 0; x < left.length; ++x, offset += right.length) {
+			final long factor = left[x];
 			for (int rightIndex = 0; rightIndex < right.length; ++rightIndex) {
-				result[x][rightIndex] = left[x] * right[rightIndex];
+				result[offset + rightIndex] = Math.multiplyExact(factor, right[rightIndex]);
 			}
 		}
 		return result;
@@ -79,21 +570,21 @@ public final class VectorMathSingleThreaded {
 		}
 		System.out.format("warm-up phase ended with result hash %d.\n", resultHash);
 	
-		final long timestamp0 = System.currentTimeMillis();
-		for (int loop = 0; loop < 10000; ++loop) {
+		final long timestamp0 = System.nanoTime();
+		for (int loop = 0; loop < TIMING_LOOPS; ++loop) {
 			final double[] sum = add(a, b);
 			resultHash ^= sum.hashCode();
 		}
 
-		final long timestamp1 = System.currentTimeMillis();
-		for (int loop = 0; loop < 10000; ++loop) {
+		final long timestamp1 = System.nanoTime();
+		for (int loop = 0; loop < TIMING_LOOPS; ++loop) {
 			final double[][] mux = mux(a, b);
 			resultHash ^= mux.hashCode();
 		}
-		final long timestamp2 = System.currentTimeMillis();
+		final long timestamp2 = System.nanoTime();
 		System.out.format("timing phase ended with result hash %d.\n", resultHash);
-		System.out.format("a + b computed in %.4fms.\n", (timestamp1 - timestamp0) * 0.0001);
-		System.out.format("a x b computed in %.4fms.\n", (timestamp2 - timestamp1) * 0.0001);
+		System.out.format("a + b computed in %.4fms.\n", (timestamp1 - timestamp0) * 1E-6 / TIMING_LOOPS);
+		System.out.format("a x b computed in %.4fms.\n", (timestamp2 - timestamp1) * 1E-6 / TIMING_LOOPS);
 
 		if (size <= 100) {
 			final double[] sum = add(a, b);
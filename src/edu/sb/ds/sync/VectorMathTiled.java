@@ -0,0 +1,226 @@
+package edu.sb.ds.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import edu.sb.ds.util.Copyright;
+
+
+/**
+ * Demonstrator for cache-blocked vector multiplexing based on double arrays. For large operand
+ * sizes, the resulting matrix is far larger than the processor caches, and computing it row by
+ * row repeatedly streams the complete right operand through the caches. This implementation
+ * instead computes the result in rectangular tiles, sized so that a tile plus the operand slices
+ * it depends on fit into the L2 cache. The tile dimensions may be passed explicitly, otherwise
+ * they are taken from the system property {@code edu.sb.ds.sync.tileSize} (the tile edge length
+ * in elements), or detected from the L2 cache size the Linux kernel reports, assuming 256KiB if
+ * there is none. Tiles may also be streamed to a consumer, which allows the result to be processed
+ * without ever having the complete matrix in memory. Also note that this class is declared final
+ * because it provides an application entry point, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class VectorMathTiled {
+	static private final int DEFAULT_SIZE = 0x1000;
+	static private final int TIMING_LOOPS = 10;
+	static private final String TILE_SIZE_PROPERTY = "edu.sb.ds.sync.tileSize";
+	static private final Path L2_CACHE_SIZE_PATH = Paths.get("/sys/devices/system/cpu/cpu0/cache/index2/size");
+	static private final int DEFAULT_L2_CACHE_SIZE = 0x40000;
+	static private final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+	static public final int TILE_SIZE = defaultTileSize();
+
+
+	/**
+	 * Tile consumer used for tile streaming.
+	 */
+	@FunctionalInterface
+	static public interface TileConsumer {
+
+		/**
+		 * Consumes a result tile. The tile elements are stored in row-major order within the given
+		 * array, i.e. tile element {@code [x][y]} is stored at index {@code x * columns + y}. Note
+		 * that the given array is reused for subsequent tiles, and must therefore not be retained.
+		 * @param row the result row index of the first tile row
+		 * @param column the result column index of the first tile column
+		 * @param rows the number of tile rows
+		 * @param columns the number of tile columns
+		 * @param tile the tile elements
+		 */
+		void accept (int row, int column, int rows, int columns, double[] tile);
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private VectorMathTiled () {}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread using the default tile size.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @return the resulting matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public double[][] mux (final double[] left, final double[] right) throws NullPointerException {
+		return mux(left, right, new double[left.length][right.length], TILE_SIZE, TILE_SIZE);
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread, computing the given result matrix tile by
+	 * tile.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param result the result matrix, with one row per left operand element, and one column per
+	 *        right operand element
+	 * @param tileRows the number of rows per tile
+	 * @param tileColumns the number of columns per tile
+	 * @return the given result matrix
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if the given result matrix dimensions do not match the
+	 *         operand lengths, or if any of the given tile dimensions is not strictly positive
+	 */
+	static public double[][] mux (final double[] left, final double[] right, final double[][] result, final int tileRows, final int tileColumns) throws NullPointerException, IllegalArgumentException {
+		if (result.length != left.length | tileRows <= 0 | tileColumns <= 0) throw new IllegalArgumentException();
+		for (final double[] row : result) {
+			if (row.length != right.length) throw new IllegalArgumentException();
+		}
+
+		for (int rowOffset = 0; rowOffset < left.length; rowOffset += tileRows) {
+			final int rowStop = Math.min(left.length, rowOffset + tileRows);
+			for (int columnOffset = 0; columnOffset < right.length; columnOffset += tileColumns) {
+				final int columnStop = Math.min(right.length, columnOffset + tileColumns);
+
+				for (int leftIndex = rowOffset; leftIndex < rowStop; ++leftIndex) {
+					final double factor = left[leftIndex];
+					final double[] row = result[leftIndex];
+					for (int rightIndex = columnOffset; rightIndex < columnStop; ++rightIndex) {
+						row[rightIndex] = factor * right[rightIndex];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread using the default tile size, streaming the
+	 * result tiles to the given consumer.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param consumer the tile consumer
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 */
+	static public void mux (final double[] left, final double[] right, final TileConsumer consumer) throws NullPointerException {
+		mux(left, right, TILE_SIZE, TILE_SIZE, consumer);
+	}
+
+
+	/**
+	 * Multiplexes two vectors within a single thread, streaming the result tiles in row-major
+	 * tile order to the given consumer. Note that this operation allocates a single tile array,
+	 * which is reused for every tile.
+	 * @param left the first operand
+	 * @param right the second operand
+	 * @param tileRows the number of rows per tile
+	 * @param tileColumns the number of columns per tile
+	 * @param consumer the tile consumer
+	 * @throws NullPointerException if one of the given parameters is {@code null}
+	 * @throws IllegalArgumentException if any of the given tile dimensions is not strictly positive,
+	 *         or if a tile would exceed the maximum array length
+	 */
+	static public void mux (final double[] left, final double[] right, final int tileRows, final int tileColumns, final TileConsumer consumer) throws NullPointerException, IllegalArgumentException {
+		if (consumer == null) throw new NullPointerException();
+		if (tileRows <= 0 | tileColumns <= 0) throw new IllegalArgumentException();
+		final long tileLength = (long) Math.min(tileRows, left.length) * Math.min(tileColumns, right.length);
+		if (tileLength > MAX_ARRAY_LENGTH) throw new IllegalArgumentException("tile too large: " + tileLength);
+		final double[] tile = new double[(int) tileLength];
+
+		for (int rowOffset = 0; rowOffset < left.length; rowOffset += tileRows) {
+			final int rows = Math.min(tileRows, left.length - rowOffset);
+			for (int columnOffset = 0; columnOffset < right.length; columnOffset += tileColumns) {
+				final int columns = Math.min(tileColumns, right.length - columnOffset);
+
+				for (int tileRow = 0; tileRow < rows; ++tileRow) {
+					final double factor = left[rowOffset + tileRow];
+					for (int tileColumn = 0, tileIndex = tileRow * columns; tileColumn < columns; ++tileColumn, ++tileIndex) {
+						tile[tileIndex] = factor * right[columnOffset + tileColumn];
+					}
+				}
+
+				consumer.accept(rowOffset, columnOffset, rows, columns, tile);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the default tile edge length, in number of elements. The tile size is chosen so that
+	 * a square tile occupies about half the L2 cache, leaving the other half for the operand
+	 * slices and other data. A malformed tile size property is ignored.
+	 * @return the default tile size
+	 */
+	static private int defaultTileSize () {
+		final String property = System.getProperty(TILE_SIZE_PROPERTY);
+		if (property != null) {
+			try {
+				return Math.max(1, Integer.parseInt(property.trim()));
+			} catch (final NumberFormatException exception) {
+				// derive tile size from L2 cache size
+			}
+		}
+
+		long cacheSize = DEFAULT_L2_CACHE_SIZE;
+		try {
+			final String text = Files.readString(L2_CACHE_SIZE_PATH).trim().toUpperCase();
+			final long factor = text.endsWith("K") ? 0x400 : text.endsWith("M") ? 0x100000 : 1;
+			cacheSize = Long.parseLong(factor == 1 ? text : text.substring(0, text.length() - 1)) * factor;
+		} catch (final IOException | RuntimeException exception) {
+			// assume default L2 cache size
+		}
+
+		final int tileSize = (int) Math.sqrt(cacheSize / 2 / Double.BYTES);
+		return Math.max(8, Integer.highestOneBit(tileSize));
+	}
+
+
+	/**
+	 * Compares tiled and untiled vector multiplexing for demo purposes.
+	 * @param args the argument array
+	 */
+	static public void main (final String[] args) {
+		final int size = args.length == 0 ? DEFAULT_SIZE : Integer.parseInt(args[0]);
+		System.out.format("Computation is performed using %dx%d tiles for operand size %d.\n", TILE_SIZE, TILE_SIZE, size);
+
+		final double[] a = new double[size], b = new double[size];
+		for (int index = 0; index < size; ++index) {
+			a[index] = index + 1.0;
+			b[index] = index + 2.0;
+		}
+		final double[][] result = new double[size][size];
+
+		// first loop serves as warm-up phase
+		long untiledNanos = 0, tiledNanos = 0, streamedNanos = 0;
+		final double[] checksum = new double[1];
+		for (int run = 0; run < 2; ++run) {
+			final long timestamp0 = System.nanoTime();
+			for (int loop = 0; loop < TIMING_LOOPS; ++loop) VectorMathSingleThreaded.mux(a, b, result);
+			final long timestamp1 = System.nanoTime();
+			for (int loop = 0; loop < TIMING_LOOPS; ++loop) mux(a, b, result, TILE_SIZE, TILE_SIZE);
+			final long timestamp2 = System.nanoTime();
+			for (int loop = 0; loop < TIMING_LOOPS; ++loop) mux(a, b, (row, column, rows, columns, tile) -> checksum[0] += tile[0]);
+			final long timestamp3 = System.nanoTime();
+
+			untiledNanos = timestamp1 - timestamp0;
+			tiledNanos = timestamp2 - timestamp1;
+			streamedNanos = timestamp3 - timestamp2;
+		}
+
+		System.out.format("a x b computed untiled in %.4fms.\n", untiledNanos * 1E-6 / TIMING_LOOPS);
+		System.out.format("a x b computed tiled in %.4fms.\n", tiledNanos * 1E-6 / TIMING_LOOPS);
+		System.out.format("a x b streamed tiled in %.4fms (checksum %s).\n", streamedNanos * 1E-6 / TIMING_LOOPS, checksum[0]);
+	}
+}
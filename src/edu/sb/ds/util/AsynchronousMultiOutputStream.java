@@ -0,0 +1,332 @@
+package edu.sb.ds.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Output stream based on a collection of byte sinks, each written asynchronously by it's own writer thread. Every write is
+ * copied once into a buffer which is shared by all byte sinks, and never modified afterwards. Every byte sink has a bounded
+ * queue of such buffers, and the given policy defines how to treat a byte sink whose queue is full. Flushing and closing
+ * wait for all byte sinks to complete, and throw the first exception any of the byte sinks failed with; a failed byte sink
+ * is skipped afterwards. Dropped and failed byte sinks are not waited for, as they might be stuck within a slow write;
+ * they are still closed eventually by their writer threads. Closing reports dropped byte sinks unless a byte sink failed.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+final class AsynchronousMultiOutputStream extends OutputStream {
+	static private final int SPILL_CHUNK_SIZE = 0x10000;
+
+	private final SinkWriter[] writers;
+	private final IOStreams.SlowSinkPolicy policy;
+	private boolean closed;
+
+
+	/**
+	 * Marker enqueued to flush or close a byte sink, which is released once the writer processed it.
+	 */
+	static private final class Marker {
+		private final boolean close;
+		private final Semaphore processed;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param close {@code true} for closing the byte sink, {@code false} for flushing it
+		 */
+		public Marker (final boolean close) {
+			this.close = close;
+			this.processed = new Semaphore(0);
+		}
+	}
+
+
+	/**
+	 * Writer of a single byte sink.
+	 */
+	static private final class SinkWriter implements Runnable {
+		private final OutputStream byteSink;
+		private final BlockingQueue<Object> queue;
+		private volatile boolean dropped;
+		private volatile Throwable failure;
+		private FileChannel spillChannel;
+		private long spillReadPosition, spillWritePosition;
+		private boolean spilling;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param byteSink the byte sink
+		 * @param queueCapacity the queue capacity
+		 */
+		public SinkWriter (final OutputStream byteSink, final int queueCapacity) {
+			this.byteSink = byteSink;
+			this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		}
+
+
+		/**
+		 * Returns whether or not this writer's byte sink is skipped, because it has been dropped or failed.
+		 * @return {@code true} if the byte sink is skipped, {@code false} otherwise
+		 */
+		public boolean isSkipped () {
+			return this.dropped | this.failure != null;
+		}
+
+
+		/**
+		 * Enqueues the given buffer according to the given policy. If spilling fails, the byte sink fails as well.
+		 * @param buffer the shared buffer
+		 * @param policy the slow sink policy
+		 */
+		public void enqueue (final byte[] buffer, final IOStreams.SlowSinkPolicy policy) {
+			if (this.isSkipped()) return;
+
+			switch (policy) {
+				case BLOCK:
+					Uninterruptibles.put(this.queue, buffer);
+					break;
+				case DROP:
+					if (!this.queue.offer(buffer)) this.dropped = true;
+					break;
+				case SPILL:
+					synchronized (this) {
+						// once spilling, buffers must be spilled until the spill is drained, in order to preserve their order
+						if (!this.spilling && this.queue.offer(buffer)) break;
+
+						try {
+							if (this.spillChannel == null) {
+								this.spillChannel = FileChannel.open(Files.createTempFile("spill-", ".tmp"), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+							}
+							final ByteBuffer spillBuffer = ByteBuffer.wrap(buffer);
+							while (spillBuffer.hasRemaining()) {
+								this.spillWritePosition += this.spillChannel.write(spillBuffer, this.spillWritePosition);
+							}
+							this.spilling = true;
+						} catch (final IOException exception) {
+							if (this.failure == null) this.failure = exception;
+						}
+					}
+					break;
+				default:
+					throw new AssertionError();
+			}
+		}
+
+
+		/**
+		 * Returns the next queued buffer or marker, or the next chunk of spilled bytes if the queue is empty. Polling the queue
+		 * and reading the spill file happen atomically in respect to spilling, because spilled bytes must be written after
+		 * the buffers queued before them, and before any buffer queued once spilling ends.
+		 * @return the next buffer or marker, or {@code null} for none
+		 */
+		private synchronized Object poll () {
+			final Object item = this.queue.poll();
+			return item == null ? this.unspill() : item;
+		}
+
+
+		/**
+		 * Returns the next chunk of spilled bytes, or ends spilling if there are none left. If reading the spill file fails,
+		 * the byte sink fails as well, and spilling ends.
+		 * @return the spilled chunk, or {@code null} for none
+		 */
+		private synchronized byte[] unspill () {
+			if (this.spillReadPosition < this.spillWritePosition) {
+				final ByteBuffer spillBuffer = ByteBuffer.allocate((int) Math.min(SPILL_CHUNK_SIZE, this.spillWritePosition - this.spillReadPosition));
+				try {
+					while (spillBuffer.hasRemaining()) {
+						this.spillReadPosition += this.spillChannel.read(spillBuffer, this.spillReadPosition);
+					}
+					return spillBuffer.array();
+				} catch (final IOException exception) {
+					if (this.failure == null) this.failure = exception;
+				}
+			}
+
+			this.spilling = false;
+			this.spillReadPosition = this.spillWritePosition = 0;
+			return null;
+		}
+
+
+		/**
+		 * Writes the given buffer to the byte sink, unless it is skipped.
+		 * @param buffer the buffer
+		 */
+		private void write (final byte[] buffer) {
+			if (this.isSkipped()) return;
+
+			try {
+				this.byteSink.write(buffer);
+			} catch (final Throwable exception) {
+				if (this.failure == null) this.failure = exception;
+			}
+		}
+
+
+		/**
+		 * Processes the queued buffers and markers until a closing marker has been processed. Spilled bytes are written
+		 * once the queue has been drained, and before any marker is processed.
+		 */
+		public void run () {
+			try {
+				while (true) {
+					Object item = this.poll();
+					if (item == null) item = Uninterruptibles.take(this.queue);
+
+					if (item instanceof byte[]) {
+						this.write((byte[]) item);
+						continue;
+					}
+
+					final Marker marker = (Marker) item;
+					for (byte[] chunk = this.unspill(); chunk != null; chunk = this.unspill()) {
+						this.write(chunk);
+					}
+
+					try {
+						if (marker.close) {
+							this.byteSink.close();
+						} else if (!this.isSkipped()) {
+							this.byteSink.flush();
+						}
+					} catch (final Throwable exception) {
+						if (this.failure == null) this.failure = exception;
+					}
+
+					marker.processed.release();
+					if (marker.close) break;
+				}
+			} finally {
+				synchronized (this) {
+					try {
+						if (this.spillChannel != null) this.spillChannel.close();
+					} catch (final IOException exception) {}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Initializes a new instance, and starts a writer thread for every byte sink.
+	 * @param policy the slow sink policy
+	 * @param queueCapacity the queue capacity of every byte sink
+	 * @param byteSinks the byte sinks
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IllegalArgumentException if the given queue capacity is not strictly positive
+	 */
+	public AsynchronousMultiOutputStream (final IOStreams.SlowSinkPolicy policy, final int queueCapacity, final OutputStream... byteSinks) throws NullPointerException, IllegalArgumentException {
+		if (policy == null) throw new NullPointerException();
+		if (queueCapacity <= 0) throw new IllegalArgumentException();
+
+		this.policy = policy;
+		this.writers = new SinkWriter[byteSinks.length];
+		for (int index = 0; index < byteSinks.length; ++index) {
+			if (byteSinks[index] == null) throw new NullPointerException();
+			this.writers[index] = new SinkWriter(byteSinks[index], queueCapacity);
+		}
+
+		for (final SinkWriter writer : this.writers) {
+			final Thread thread = new Thread(writer, "multi-output-writer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void write (final byte[] buffer, final int offset, final int length) throws IOException {
+		if (this.closed) throw new IOException("stream closed");
+		if (this.writers.length == 0) throw new EOFException();
+		if (length == 0) return;
+
+		final byte[] sharedBuffer = new byte[length];
+		System.arraycopy(buffer, offset, sharedBuffer, 0, length);
+		for (final SinkWriter writer : this.writers) {
+			writer.enqueue(sharedBuffer, this.policy);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write (final int value) throws IOException {
+		this.write(new byte[] { (byte) value });
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void flush () throws IOException {
+		if (this.closed) throw new IOException("stream closed");
+		this.process(false);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close () throws IOException {
+		if (this.closed) return;
+		this.closed = true;
+		this.process(true);
+	}
+
+
+	/**
+	 * Enqueues a marker for every byte sink, waits until the ones of all byte sinks not skipped have been processed, and
+	 * throws the first failure of any byte sink. If closing, dropped byte sinks are reported unless a byte sink failed.
+	 * @param close {@code true} for closing the byte sinks, {@code false} for flushing them
+	 * @throws IOException if any of the byte sinks failed with an I/O related problem, or if closing and any byte sink has
+	 *         been dropped
+	 */
+	private void process (final boolean close) throws IOException {
+		final Marker[] markers = new Marker[this.writers.length];
+		for (int index = 0; index < this.writers.length; ++index) {
+			final SinkWriter writer = this.writers[index];
+			final Marker marker = new Marker(close);
+
+			if (writer.isSkipped()) {
+				// the buffers queued for a skipped byte sink are obsolete, and it's writer might be stuck within a slow
+				// write; therefore the marker replaces them instead of waiting for room, and is not waited for either
+				writer.queue.clear();
+				writer.queue.offer(marker);
+			} else {
+				Uninterruptibles.put(writer.queue, marker);
+				markers[index] = marker;
+			}
+		}
+
+		Throwable exception = null;
+		final StringBuilder droppedIndices = new StringBuilder();
+		for (int index = 0; index < this.writers.length; ++index) {
+			if (markers[index] != null) Uninterruptibles.acquire(markers[index].processed);
+			if (exception == null) exception = this.writers[index].failure;
+			if (this.writers[index].dropped) droppedIndices.append(droppedIndices.length() == 0 ? "" : ", ").append(index);
+		}
+
+		if (exception == null & close & droppedIndices.length() > 0) exception = new IOException("byte sinks dropped: " + droppedIndices);
+		if (exception == null) return;
+		if (exception instanceof Error) throw (Error) exception;
+		if (exception instanceof RuntimeException) throw (RuntimeException) exception;
+		if (exception instanceof IOException) throw (IOException) exception;
+		throw new AssertionError();
+	}
+}
@@ -0,0 +1,108 @@
+package edu.sb.ds.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Facade for a bounded pool of byte buffers, used to avoid allocating copy buffers on every
+ * call. Buffers are pooled in size classes, each being a power of two between 4KiB and 1MiB,
+ * and every size class pools a bounded number of buffers within an array of slots. Threads
+ * start probing the slots at an index derived from their thread ID, which stripes the slot
+ * accesses of concurrent threads. Acquiring and releasing pooled buffers is lock-free, and
+ * does not allocate any memory once the pool is warm. Note that this class is declared final
+ * because it is a facade, and therefore not supposed to be extended.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class BufferPool {
+	static private final int MIN_LOG2_SIZE = 12;
+	static private final int MAX_LOG2_SIZE = 20;
+	static private final int MAX_CLASS_BYTES = 0x400000;
+	static private final int MIN_CLASS_SLOTS = 2, MAX_CLASS_SLOTS = 64;
+	static private final AtomicReferenceArray<?>[] SIZE_CLASSES = new AtomicReferenceArray<?>[MAX_LOG2_SIZE - MIN_LOG2_SIZE + 1];
+
+	static {
+		for (int index = 0; index < SIZE_CLASSES.length; ++index) {
+			final int slotCount = Math.max(MIN_CLASS_SLOTS, Math.min(MAX_CLASS_SLOTS, MAX_CLASS_BYTES >> (MIN_LOG2_SIZE + index)));
+			SIZE_CLASSES[index] = new AtomicReferenceArray<byte[]>(slotCount);
+		}
+	}
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private BufferPool () {}
+
+
+	/**
+	 * Returns a buffer with at least the given length. If the length fits a size class, the
+	 * buffer is taken from the pool if available, and allocated with the size class length
+	 * otherwise; such buffers should be returned using {@link #release(byte[])} once they are no
+	 * longer in use. Larger buffers are always allocated with the exact length given. Note that
+	 * pooled buffers are not cleared, and therefore may contain the data of previous uses.
+	 * @param length the minimum buffer length
+	 * @return the buffer
+	 * @throws IllegalArgumentException if the given length is negative
+	 */
+	static public byte[] acquire (final int length) throws IllegalArgumentException {
+		if (length < 0) throw new IllegalArgumentException();
+
+		final int sizeClass = sizeClass(length);
+		if (sizeClass == -1) return new byte[length];
+
+		final AtomicReferenceArray<byte[]> slots = slots(sizeClass);
+		final int mask = slots.length() - 1, start = (int) Thread.currentThread().getId();
+		for (int probe = 0; probe <= mask; ++probe) {
+			final int index = (start + probe) & mask;
+			if (slots.get(index) != null) {
+				final byte[] buffer = slots.getAndSet(index, null);
+				if (buffer != null) return buffer;
+			}
+		}
+
+		return new byte[1 << (MIN_LOG2_SIZE + sizeClass)];
+	}
+
+
+	/**
+	 * Returns the given buffer to the pool, provided it's length matches a size class, and the
+	 * size class has a free slot; otherwise the buffer is left to the garbage collector. The
+	 * buffer must not be used by the caller afterwards.
+	 * @param buffer the buffer
+	 * @throws NullPointerException if the given argument is {@code null}
+	 */
+	static public void release (final byte[] buffer) throws NullPointerException {
+		final int sizeClass = sizeClass(buffer.length);
+		if (sizeClass == -1 || buffer.length != 1 << (MIN_LOG2_SIZE + sizeClass)) return;
+
+		final AtomicReferenceArray<byte[]> slots = slots(sizeClass);
+		final int mask = slots.length() - 1, start = (int) Thread.currentThread().getId();
+		for (int probe = 0; probe <= mask; ++probe) {
+			final int index = (start + probe) & mask;
+			if (slots.get(index) == null && slots.compareAndSet(index, null, buffer)) return;
+		}
+	}
+
+
+	/**
+	 * Returns the index of the smallest size class fitting the given length.
+	 * @param length the buffer length
+	 * @return the size class index, or {@code -1} if the given length is too large to be pooled
+	 */
+	static private int sizeClass (final int length) {
+		if (length > 1 << MAX_LOG2_SIZE) return -1;
+		final int log2Size = length <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(length - 1);
+		return Math.max(0, log2Size - MIN_LOG2_SIZE);
+	}
+
+
+	/**
+	 * Returns the slots of the given size class.
+	 * @param sizeClass the size class index
+	 * @return the slots
+	 */
+	@SuppressWarnings("unchecked")
+	static private AtomicReferenceArray<byte[]> slots (final int sizeClass) {
+		return (AtomicReferenceArray<byte[]>) SIZE_CLASSES[sizeClass];
+	}
+}
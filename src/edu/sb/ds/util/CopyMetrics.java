@@ -0,0 +1,134 @@
+package edu.sb.ds.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Copy statistics of a single call site, registered with the platform MBean server under the
+ * object name {@code edu.sb.ds.util:type=CopyMetrics,name=<site>}. Copies are instrumented by
+ * calling {@link #start()} before and {@link #stop(long, long)} after copying, the latter
+ * preferably within a {@code finally} block. Both operations are lock-free, and do not allocate
+ * any memory.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class CopyMetrics implements CopyMetricsMBean {
+	static private final String OBJECT_NAME_PREFIX = "edu.sb.ds.util:type=CopyMetrics,name=";
+	static private final int HISTOGRAM_SIZE = 32;
+	static private final Map<String,CopyMetrics> INSTANCES = new ConcurrentHashMap<>();
+
+	private final String site;
+	private final LongAdder bytesCopied;
+	private final LongAdder copyCount;
+	private final LongAdder activeCopies;
+	private final AtomicLongArray latencyHistogram;
+
+
+	/**
+	 * Initializes a new instance.
+	 * @param site the call site
+	 */
+	private CopyMetrics (final String site) {
+		this.site = site;
+		this.bytesCopied = new LongAdder();
+		this.copyCount = new LongAdder();
+		this.activeCopies = new LongAdder();
+		this.latencyHistogram = new AtomicLongArray(HISTOGRAM_SIZE);
+	}
+
+
+	/**
+	 * Returns the copy metrics of the given call site, creating and registering them with the
+	 * platform MBean server if necessary. Note that failing to register is tolerated, as metrics
+	 * must never break the copies they instrument.
+	 * @param site the call site, for example {@code "IOStreams.copy"}
+	 * @return the copy metrics
+	 * @throws NullPointerException if the given argument is {@code null}
+	 */
+	static public CopyMetrics forSite (final String site) throws NullPointerException {
+		return INSTANCES.computeIfAbsent(site, key -> {
+			final CopyMetrics metrics = new CopyMetrics(key);
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(key)));
+			} catch (final JMException | SecurityException exception) {
+				// metrics remain available locally
+			}
+			return metrics;
+		});
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getSite () {
+		return this.site;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getBytesCopied () {
+		return this.bytesCopied.sum();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getCopyCount () {
+		return this.copyCount.sum();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getActiveCopies () {
+		return this.activeCopies.sum();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long[] getLatencyHistogram () {
+		final long[] histogram = new long[HISTOGRAM_SIZE];
+		for (int index = 0; index < histogram.length; ++index) {
+			histogram[index] = this.latencyHistogram.get(index);
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Registers the start of a copy.
+	 * @return the start timestamp, in nanoseconds, which must be passed to {@link #stop(long, long)}
+	 */
+	public long start () {
+		this.activeCopies.increment();
+		return System.nanoTime();
+	}
+
+
+	/**
+	 * Registers the end of a copy, regardless of whether it succeeded or not.
+	 * @param timestamp the start timestamp returned by {@link #start()}
+	 * @param bytesCopied the number of bytes copied
+	 */
+	public void stop (final long timestamp, final long bytesCopied) {
+		final long micros = (System.nanoTime() - timestamp) / 1000;
+		final int index = Math.min(HISTOGRAM_SIZE - 1, Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, micros)));
+
+		this.activeCopies.decrement();
+		this.copyCount.increment();
+		this.bytesCopied.add(bytesCopied);
+		this.latencyHistogram.incrementAndGet(index);
+	}
+}
@@ -0,0 +1,47 @@
+package edu.sb.ds.util;
+
+
+/**
+ * Management interface of {@link CopyMetrics}, exposing copy statistics of a single call site
+ * to JMX clients like {@code jconsole}.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public interface CopyMetricsMBean {
+
+	/**
+	 * Returns the call site name.
+	 * @return the call site
+	 */
+	String getSite ();
+
+
+	/**
+	 * Returns the number of bytes copied by completed copies.
+	 * @return the byte count
+	 */
+	long getBytesCopied ();
+
+
+	/**
+	 * Returns the number of completed copies.
+	 * @return the copy count
+	 */
+	long getCopyCount ();
+
+
+	/**
+	 * Returns the number of copies currently running.
+	 * @return the active copy count
+	 */
+	long getActiveCopies ();
+
+
+	/**
+	 * Returns the copy latency histogram. The element at index {@code 0} counts the copies that
+	 * completed in less than one microsecond, while every element at index {@code i > 0} counts
+	 * the copies that completed in {@code [2^(i-1), 2^i[} microseconds; the last element also
+	 * counts all longer copies.
+	 * @return the latency histogram
+	 */
+	long[] getLatencyHistogram ();
+}
@@ -0,0 +1,204 @@
+package edu.sb.ds.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+
+/**
+ * Lazy view of the files within a (virtual) file system, like a zip file system. In opposition to
+ * {@link IOStreams#read(FileSystem)}, only the index of file paths and sizes is kept in memory,
+ * while the file content is read or mapped on demand, and not retained. This keeps memory
+ * consumption bounded by the content actually accessed, which allows processing archives larger
+ * than the heap, for example in parallel using {@link #parallelStream()}. Note that the index is
+ * a snapshot taken upon creation.
+ */
+@Copyright(year=2020, holders="Sascha Baumeister")
+public final class FileSystemIndex {
+	static private final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final SortedMap<String,Entry> entries;
+
+
+	/**
+	 * Lazy file entry, consisting of a path and the file size at indexing time.
+	 */
+	static public final class Entry {
+		private final Path path;
+		private final long size;
+
+
+		/**
+		 * Initializes a new instance.
+		 * @param path the file path
+		 * @param size the file size
+		 */
+		private Entry (final Path path, final long size) {
+			this.path = path;
+			this.size = size;
+		}
+
+
+		/**
+		 * Returns the file path.
+		 * @return the path
+		 */
+		public Path getPath () {
+			return this.path;
+		}
+
+
+		/**
+		 * Returns the file size at indexing time.
+		 * @return the size in bytes
+		 */
+		public long getSize () {
+			return this.size;
+		}
+
+
+		/**
+		 * Returns a new input stream reading the file content, which must be closed by the
+		 * caller.
+		 * @return the input stream
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public InputStream newInputStream () throws IOException {
+			return Files.newInputStream(this.path);
+		}
+
+
+		/**
+		 * Reads the file content into a new byte array.
+		 * @return the file content
+		 * @throws IOException if there is an I/O related problem, or if the file is too large to
+		 *         fit into a byte array
+		 */
+		public byte[] read () throws IOException {
+			try (SeekableByteChannel channel = Files.newByteChannel(this.path, StandardOpenOption.READ)) {
+				final long size = channel.size();
+				if (size > MAX_ARRAY_LENGTH) throw new IOException("file too large to be read into memory: " + this.path);
+
+				final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) != -1);
+				return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+			}
+		}
+
+
+		/**
+		 * Returns the file content as a read-only buffer. If the file resides within the default
+		 * file system, the file is mapped into memory, which leaves loading it's content to the
+		 * operating system; otherwise, the content is read once into a heap buffer. Note that
+		 * other file systems are not asked for file channels, because some of them, like the zip
+		 * file system, emulate these by extracting the file into a temporary file first.
+		 * @return the file content
+		 * @throws IOException if there is an I/O related problem, or if the file is too large to
+		 *         fit into a buffer
+		 */
+		public ByteBuffer map () throws IOException {
+			if (this.path.getFileSystem() != FileSystems.getDefault()) return ByteBuffer.wrap(this.read()).asReadOnlyBuffer();
+
+			try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+				final long size = channel.size();
+				if (size > Integer.MAX_VALUE) throw new IOException("file too large to be mapped: " + this.path);
+				return channel.map(MapMode.READ_ONLY, 0, size);
+			}
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString () {
+			return this.path + " (" + this.size + " bytes)";
+		}
+	}
+
+
+	/**
+	 * Initializes a new instance.
+	 * @param entries the entries
+	 */
+	private FileSystemIndex (final SortedMap<String,Entry> entries) {
+		this.entries = Collections.unmodifiableSortedMap(entries);
+	}
+
+
+	/**
+	 * Returns a new index of all the regular and readable files within the given file system.
+	 * Note that no file content is read.
+	 * @param fileSystem the (virtual) file system
+	 * @return the index created
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public FileSystemIndex of (final FileSystem fileSystem) throws NullPointerException, IOException {
+		final SortedMap<String,Entry> entries = new TreeMap<>();
+
+		for (final Path directory : fileSystem.getRootDirectories()) {
+			try (Stream<Path> stream = Files.walk(directory)) {
+				for (final Iterator<Path> iterator = stream.iterator(); iterator.hasNext();) {
+					final Path path = iterator.next();
+					if (Files.isRegularFile(path) & Files.isReadable(path)) entries.put(path.toString(), new Entry(path, Files.size(path)));
+				}
+			}
+		}
+
+		return new FileSystemIndex(entries);
+	}
+
+
+	/**
+	 * Returns the entries, sorted and keyed by path.
+	 * @return the unmodifiable entry map
+	 */
+	public SortedMap<String,Entry> entries () {
+		return this.entries;
+	}
+
+
+	/**
+	 * Returns the entry with the given path.
+	 * @param path the file path
+	 * @return the entry, or {@code null} for none
+	 * @throws NullPointerException if the given argument is {@code null}
+	 */
+	public Entry get (final String path) throws NullPointerException {
+		return this.entries.get(path);
+	}
+
+
+	/**
+	 * Returns the total size of all files within this index.
+	 * @return the total size in bytes
+	 */
+	public long size () {
+		return this.entries.values().stream().mapToLong(Entry::getSize).sum();
+	}
+
+
+	/**
+	 * Returns a parallel stream of this index' entries, suitable for bulk processing of the
+	 * file contents.
+	 * @return the parallel entry stream
+	 */
+	public Stream<Entry> parallelStream () {
+		return this.entries.values().parallelStream();
+	}
+}
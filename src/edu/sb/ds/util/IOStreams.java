@@ -1,7 +1,8 @@
 package edu.sb.ds.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -9,15 +10,20 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.SocketException;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Queue;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 
@@ -27,6 +33,35 @@ import java.util.stream.Stream;
  */
 @Copyright(year = 2013, holders = "Sascha Baumeister")
 public class IOStreams {
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("IOStreams.copy");
+	static private final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+	static private final int MIN_CHUNK_LENGTH = 0x2000;
+	static private final int MAX_CHUNK_LENGTH = 0x100000;
+
+
+	/**
+	 * Policies defining how asynchronous multi output streams treat a byte sink that cannot keep up with the others, i.e.
+	 * whose queue of pending buffers is full.
+	 */
+	static public enum SlowSinkPolicy {
+		/**
+		 * Writing waits until the slow byte sink's queue has room again, which throttles all byte sinks to the slowest one.
+		 */
+		BLOCK,
+
+		/**
+		 * The slow byte sink is abandoned, i.e. it receives no further bytes, but is still closed eventually; closing the
+		 * stream reports dropped byte sinks.
+		 */
+		DROP,
+
+		/**
+		 * Buffers exceeding the slow byte sink's queue capacity are spilled into a temporary file, and written to the byte
+		 * sink once it catches up; this trades disk space for memory.
+		 */
+		SPILL
+	}
+
 
 	/**
 	 * Prevents external instantiation.
@@ -47,22 +82,76 @@ public class IOStreams {
 	 * @throws IOException if there is an I/O related problem
 	 */
 	static public long copy (final InputStream byteSource, final OutputStream byteSink, final int bufferSize) throws IOException {
+		return copy(byteSource, byteSink, bufferSize, COPY_METRICS);
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given byte source, and writes them to the given byte sink, see
+	 * {@link #copy(InputStream, OutputStream, int)}. If both source and sink are backed by file channels, the bytes are
+	 * transferred using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which allows the
+	 * operating system to copy them within kernel space; any remaining bytes are copied using a buffered loop. The copy buffer
+	 * is taken from the {@link BufferPool}, and returned to it afterwards, which avoids allocating a buffer per call. The copy
+	 * is recorded within the given metrics.
+	 * @param byteSource the byte source
+	 * @param byteSink the byte sink
+	 * @param bufferSize the buffer size, in number of bytes
+	 * @param metrics the copy metrics of the call site
+	 * @return the number of bytes copied
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IllegalArgumentException if the given buffer size is negative
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static long copy (final InputStream byteSource, final OutputStream byteSink, final int bufferSize, final CopyMetrics metrics) throws IOException {
 		if (bufferSize <= 0) throw new IllegalArgumentException();
-		final byte[] buffer = new byte[bufferSize];
+		final byte[] buffer = BufferPool.acquire(bufferSize);
 
+		final long timestamp = metrics.start();
 		long bytesCopied = 0;
 		try {
-			for (int bytesRead = byteSource.read(buffer); bytesRead != -1; bytesRead = byteSource.read(buffer)) {
+			final FileChannel sourceChannel = byteSource instanceof FileInputStream ? ((FileInputStream) byteSource).getChannel() : null;
+			final FileChannel sinkChannel = byteSink instanceof FileOutputStream ? ((FileOutputStream) byteSink).getChannel() : null;
+			if (sourceChannel != null & sinkChannel != null) bytesCopied = transfer(sourceChannel, sinkChannel);
+
+			// note that pooled buffers may be longer than requested
+			for (int bytesRead = byteSource.read(buffer, 0, bufferSize); bytesRead != -1; bytesRead = byteSource.read(buffer, 0, bufferSize)) {
 				byteSink.write(buffer, 0, bytesRead);
 				bytesCopied += bytesRead;
 			}
 		} catch (final EOFException | SocketException exception) {
 			// treat as EOF because a TCP stream has been closed asynchronously
+		} finally {
+			metrics.stop(timestamp, bytesCopied);
+			BufferPool.release(buffer);
 		}
 		return bytesCopied;
 	}
 
 
+	/**
+	 * Transfers the bytes between the given source channel's position and it's current size to the given sink channel, and
+	 * advances the source position accordingly. Note that socket streams extend the file streams, but do not provide channels;
+	 * also note that channels representing pipes or devices are skipped, leaving all their bytes to be copied by the caller.
+	 * @param sourceChannel the source channel
+	 * @param sinkChannel the sink channel
+	 * @return the number of bytes transferred
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static private long transfer (final FileChannel sourceChannel, final FileChannel sinkChannel) throws IOException {
+		// note that unseekable channels, like the ones of pipes, report a size of zero
+		final long size = sourceChannel.size();
+		if (size == 0) return 0;
+
+		final long start = sourceChannel.position();
+		long position = start;
+		for (long bytesTransferred = -1; position < size & bytesTransferred != 0; position += bytesTransferred) {
+			bytesTransferred = sourceChannel.transferTo(position, size - position, sinkChannel);
+		}
+		sourceChannel.position(position);
+		return position - start;
+	}
+
+
 	/**
 	 * Reads all remaining characters from the given char source, and writes them to the given char sink. Returns the number of
 	 * characters copied, and closes neither source nor sink. Note that large copy buffers speed up processing, but consume more
@@ -93,17 +182,108 @@ public class IOStreams {
 
 
 	/**
-	 * Reads all remaining bytes from the given byte source, and returns them as a byte array.
+	 * Reads all remaining bytes from the given byte source, and returns them as a byte array, see
+	 * {@link #read(InputStream, long)}.
 	 * @param byteSource the byte source
 	 * @return the bytes
 	 * @throws NullPointerException if the given byte source is {@code null}
 	 * @throws IOException if there is an I/O related problem
 	 */
 	static public byte[] read (final InputStream byteSource) throws IOException {
-		try (ByteArrayOutputStream byteSink = new ByteArrayOutputStream()) {
-			copy(byteSource, byteSink, 0x10000);
-			return byteSink.toByteArray();
+		return read(byteSource, -1);
+	}
+
+
+	/**
+	 * Reads the given number of bytes from the given byte source, and returns them as a byte array. If the length is known,
+	 * like a file size or an HTTP content length, the result is allocated once, and the bytes are read directly into it; any
+	 * bytes beyond the given length remain unread. Otherwise, a negative length causes all remaining bytes to be read into a
+	 * list of chunks, which is assembled into the result at the end. The first chunk is sized using the source's estimate of
+	 * it's available bytes, and is returned without copying if it turns out to contain exactly all the bytes; this is usually
+	 * the case for file streams. Either way, every byte is copied at most once after being read, and the peak memory
+	 * consumption stays below twice the number of bytes read. Note that {@link SocketException} is treated as a kind of EOF
+	 * if the length is unknown, due to the other side terminating the stream.
+	 * @param byteSource the byte source
+	 * @param length the number of bytes to read, or a negative value for all remaining bytes
+	 * @return the bytes
+	 * @throws NullPointerException if the given byte source is {@code null}
+	 * @throws IllegalArgumentException if the given length exceeds the maximum array length
+	 * @throws EOFException if the given length is known, but the byte source ends prematurely
+	 * @throws IOException if there is an I/O related problem
+	 * @throws OutOfMemoryError if the length is unknown, and the byte source exceeds the maximum array length
+	 */
+	static public byte[] read (final InputStream byteSource, final long length) throws NullPointerException, IllegalArgumentException, IOException {
+		if (byteSource == null) throw new NullPointerException();
+		if (length > MAX_ARRAY_LENGTH) throw new IllegalArgumentException();
+
+		final long timestamp = COPY_METRICS.start();
+		long bytesRead = 0;
+		try {
+			if (length < 0) {
+				final byte[] result = readChunked(byteSource);
+				bytesRead = result.length;
+				return result;
+			}
+
+			final byte[] result = new byte[(int) length];
+			while (bytesRead < result.length) {
+				final int count = byteSource.read(result, (int) bytesRead, result.length - (int) bytesRead);
+				if (count == -1) throw new EOFException();
+				bytesRead += count;
+			}
+			return result;
+		} finally {
+			COPY_METRICS.stop(timestamp, bytesRead);
+		}
+	}
+
+
+	/**
+	 * Reads all remaining bytes from the given byte source into a list of chunks, and assembles them into a byte array. The
+	 * first chunk is sized to hold the source's available bytes, the following chunks grow geometrically in size.
+	 * @param byteSource the byte source
+	 * @return the bytes
+	 * @throws IOException if there is an I/O related problem
+	 * @throws OutOfMemoryError if the byte source exceeds the maximum array length
+	 */
+	static private byte[] readChunked (final InputStream byteSource) throws IOException {
+		final List<byte[]> chunks = new ArrayList<>();
+		final int available = Math.min(byteSource.available(), MAX_ARRAY_LENGTH);
+		byte[] chunk = new byte[available > 0 ? available : MIN_CHUNK_LENGTH];
+		int offset = 0;
+		long length = 0;
+
+		try {
+			for (int bytesRead = byteSource.read(chunk, offset, chunk.length - offset); bytesRead != -1; bytesRead = byteSource.read(chunk, offset, chunk.length - offset)) {
+				offset += bytesRead;
+				if ((length += bytesRead) > MAX_ARRAY_LENGTH) throw new OutOfMemoryError("Required array size too large");
+
+				if (offset == chunk.length) {
+					// probe for EOF before allocating another chunk, which is usually superfluous if the first chunk fits exactly
+					final int nextByte = byteSource.read();
+					if (nextByte == -1) break;
+					if (++length > MAX_ARRAY_LENGTH) throw new OutOfMemoryError("Required array size too large");
+
+					chunks.add(chunk);
+					chunk = new byte[(int) Math.min(MAX_CHUNK_LENGTH, Math.max(MIN_CHUNK_LENGTH, length))];
+					chunk[0] = (byte) nextByte;
+					offset = 1;
+				}
+			}
+		} catch (final EOFException | SocketException exception) {
+			// treat as EOF because a TCP stream has been closed asynchronously
 		}
+
+		if (chunks.isEmpty() & offset == chunk.length) return chunk;
+
+		final byte[] result = new byte[(int) length];
+		int position = 0;
+		for (final byte[] fullChunk : chunks) {
+			System.arraycopy(fullChunk, 0, result, position, fullChunk.length);
+			position += fullChunk.length;
+		}
+		System.arraycopy(chunk, 0, result, position, offset);
+		return result;
 	}
 
 
@@ -124,7 +304,8 @@ public class IOStreams {
 
 	/**
 	 * Returns the path and binary content of all the files within the given file system. Note that this operation is designed
-	 * to work with virtual file systems.
+	 * to work with virtual file systems. Also note that all file contents are kept in memory; use {@link #index(FileSystem)}
+	 * for large file systems instead.
 	 * @param fileSystem the (virtual) file system
 	 * @return the file names and their respective binary content as a map
 	 * @throws NullPointerException if the given argument is {@code null}
@@ -146,28 +327,74 @@ public class IOStreams {
 	}
 
 
+	/**
+	 * Returns a lazy view of all the files within the given file system, consisting of an index of file paths and sizes, with
+	 * the file content being read or mapped on demand. Note that this operation is designed to work with virtual file systems.
+	 * @param fileSystem the (virtual) file system
+	 * @return the file system index
+	 * @throws NullPointerException if the given argument is {@code null}
+	 * @throws IOException if there is an I/O related problem
+	 */
+	static public FileSystemIndex index (final FileSystem fileSystem) throws IOException {
+		return FileSystemIndex.of(fileSystem);
+	}
+
+
 	/**
 	 * Returns a new input stream based on a sequence of byte sources, each read subsequently.
 	 * @param byteSources the byte sources
 	 * @return the multi input stream created
 	 */
 	static public InputStream newMultiInputStream (final InputStream... byteSources) {
-		final Queue<InputStream> queue = new ArrayDeque<InputStream>(Arrays.asList(byteSources));
+		return newMultiInputStream(0, 0, byteSources);
+	}
+
+
+	/**
+	 * Returns a new input stream based on a sequence of byte sources, each read subsequently. While a byte source is being read,
+	 * the first bytes of the following {@code prefetchCount} byte sources are read in the background, which hides their
+	 * first-byte latency when switching byte sources; each prefetch reads up to {@code bufferSize} bytes. Byte sources are
+	 * switched iteratively, which allows arbitrary numbers of empty byte sources. Note that any exception occurring while
+	 * prefetching is thrown once the respective byte source is switched to.
+	 * @param prefetchCount the number of byte sources prefetched in the background, or zero for no prefetching
+	 * @param bufferSize the prefetch buffer size, in number of bytes
+	 * @param byteSources the byte sources
+	 * @return the multi input stream created
+	 * @throws NullPointerException if the given byte sources array is {@code null}
+	 * @throws IllegalArgumentException if the given prefetch count is negative, or if it is positive while the given buffer
+	 *         size is not
+	 */
+	static public InputStream newMultiInputStream (final int prefetchCount, final int bufferSize, final InputStream... byteSources) throws NullPointerException, IllegalArgumentException {
+		if (prefetchCount < 0 | (prefetchCount > 0 & bufferSize <= 0)) throw new IllegalArgumentException();
+		final InputStream[] sources = byteSources.clone();
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final Future<byte[]>[] prefetches = new Future[sources.length];
+		final ExecutorService threadPool = prefetchCount == 0 ? null : Executors.newFixedThreadPool(prefetchCount, runnable -> {
+			final Thread thread = new Thread(runnable, "multi-input-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
 
 		return new InputStream() {
+			private int index = -1;
+			private byte[] prefix = new byte[0];
+			private int prefixOffset = 0;
+
 			@Override
 			public synchronized void close () throws IOException {
+				if (threadPool != null) threadPool.shutdownNow();
 				Throwable exception = null;
 
-				for (final InputStream byteSource : queue) {
+				for (int sourceIndex = Math.max(0, this.index); sourceIndex < sources.length; ++sourceIndex) {
 					try {
-						byteSource.close();
+						sources[sourceIndex].close();
 					} catch (final Throwable e) {
 						exception = e;
 					}
 				}
-				queue.clear();
+				this.index = sources.length;
 
+				if (exception == null) return;
 				if (exception instanceof Error) throw (Error) exception;
 				if (exception instanceof RuntimeException) throw (RuntimeException) exception;
 				if (exception instanceof IOException) throw (IOException) exception;
@@ -176,10 +403,11 @@ public class IOStreams {
 
 			@Override
 			public synchronized int available () {
-				final InputStream byteSource = queue.peek();
+				if (this.prefixOffset < this.prefix.length) return this.prefix.length - this.prefixOffset;
+				if (this.index < 0 | this.index >= sources.length) return 0;
 
 				try {
-					return byteSource.available();
+					return sources[this.index].available();
 				} catch (final Exception exception) {
 					return 0;
 				}
@@ -187,21 +415,32 @@ public class IOStreams {
 
 			@Override
 			public synchronized int read (final byte buffer[], final int offset, final int length) throws IOException {
-				final InputStream byteSource = queue.peek();
-				if (byteSource == null) return -1;
+				if (length == 0) return 0;
+				if (this.index < 0) this.next();
+
+				while (this.index < sources.length) {
+					if (this.prefixOffset < this.prefix.length) {
+						final int bytesRead = Math.min(length, this.prefix.length - this.prefixOffset);
+						System.arraycopy(this.prefix, this.prefixOffset, buffer, offset, bytesRead);
+						this.prefixOffset += bytesRead;
+						return bytesRead;
+					}
 
-				try {
-					final int bytesRead = byteSource.read(buffer, offset, length);
-					if (bytesRead != -1) return bytesRead;
-				} catch (final SocketException exception) {
-					// do nothing because an underlying socket stream
-					// has been closed asynchronously while blocking!
+					try {
+						final int bytesRead = sources[this.index].read(buffer, offset, length);
+						if (bytesRead != -1) return bytesRead;
+					} catch (final SocketException exception) {
+						// do nothing because an underlying socket stream
+						// has been closed asynchronously while blocking!
+					}
+
+					try {
+						sources[this.index].close();
+					} catch (final IOException exception) {}
+					this.next();
 				}
 
-				try {
-					queue.remove().close();
-				} catch (final IOException exception) {}
-				return this.read(buffer, offset, length);
+				return -1;
 			}
 
 			@Override
@@ -210,6 +449,50 @@ public class IOStreams {
 				final int bytesRead = this.read(buffer);
 				return bytesRead == -1 ? -1 : buffer[0] & 0xFF;
 			}
+
+			/**
+			 * Switches to the next byte source, taking over it's prefetched bytes, and schedules the prefetch of the byte
+			 * sources entering the prefetch window.
+			 * @throws IOException if prefetching the next byte source failed
+			 */
+			private void next () throws IOException {
+				this.index += 1;
+				this.prefix = new byte[0];
+				this.prefixOffset = 0;
+				if (threadPool == null || this.index >= sources.length) return;
+
+				for (int sourceIndex = this.index + 1, stop = Math.min(sources.length, this.index + 1 + prefetchCount); sourceIndex < stop; ++sourceIndex) {
+					if (prefetches[sourceIndex] != null) continue;
+
+					final InputStream byteSource = sources[sourceIndex];
+					prefetches[sourceIndex] = threadPool.submit(() -> {
+						final byte[] buffer = new byte[bufferSize];
+						try {
+							final int bytesRead = byteSource.read(buffer);
+							return bytesRead == -1 ? new byte[0] : Arrays.copyOf(buffer, bytesRead);
+						} catch (final SocketException exception) {
+							return new byte[0];
+						}
+					});
+				}
+
+				// no further prefetches are scheduled once the window reaches the last byte source
+				if (this.index + prefetchCount >= sources.length - 1) threadPool.shutdown();
+
+				final Future<byte[]> prefetch = prefetches[this.index];
+				if (prefetch == null) return;
+				prefetches[this.index] = null;
+
+				try {
+					this.prefix = Uninterruptibles.get(prefetch);
+				} catch (final ExecutionException exception) {
+					final Throwable cause = exception.getCause();
+					if (cause instanceof Error) throw (Error) cause;
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof IOException) throw (IOException) cause;
+					throw new AssertionError();
+				}
+			}
 		};
 	}
 
@@ -233,6 +516,7 @@ public class IOStreams {
 					}
 				}
 
+				if (exception == null) return;
 				if (exception instanceof Error) throw (Error) exception;
 				if (exception instanceof RuntimeException) throw (RuntimeException) exception;
 				if (exception instanceof IOException) throw (IOException) exception;
@@ -261,4 +545,25 @@ public class IOStreams {
 			}
 		};
 	}
+
+
+	/**
+	 * Returns a new output stream based on a collection of byte sinks, each written asynchronously by it's own writer thread.
+	 * Every write is copied once into a read-only buffer shared by all byte sinks, and queued for each of them; the given
+	 * policy defines how to treat a byte sink whose queue is full, which allows a slow byte sink not to stall the others.
+	 * Flushing and closing the stream wait until all byte sinks have processed their queues, and throw the first exception
+	 * any byte sink failed with; a failed byte sink receives no further bytes. Dropped or failed byte sinks are not waited
+	 * for, which prevents a byte sink stuck within a slow write from stalling the others. Closing the stream reports any
+	 * dropped byte sinks using an {@link IOException}, unless a byte sink failed. Note that a closed stream's writer threads
+	 * terminate once their byte sinks are closed, while the writer threads of a stream that is never closed remain waiting.
+	 * @param policy the slow sink policy
+	 * @param queueCapacity the maximum number of buffers queued per byte sink
+	 * @param byteSinks the byte sinks
+	 * @return the multi output stream created
+	 * @throws NullPointerException if any of the given arguments is {@code null}
+	 * @throws IllegalArgumentException if the given queue capacity is not strictly positive
+	 */
+	static public OutputStream newMultiOutputStream (final SlowSinkPolicy policy, final int queueCapacity, final OutputStream... byteSinks) throws NullPointerException, IllegalArgumentException {
+		return new AsynchronousMultiOutputStream(policy, queueCapacity, byteSinks);
+	}
 }
\ No newline at end of file
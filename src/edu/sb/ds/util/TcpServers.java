@@ -1,6 +1,5 @@
 package edu.sb.ds.util;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -36,6 +35,7 @@ import com.sun.net.httpserver.HttpsServer;
 public class TcpServers {
 	static private final char[] DEFAULT_KEYSTORE_PASSWORD = "changeit".toCharArray();
 	static private final String CRYPTOGRAPHIC_PROTOCOL = "TLS";
+	static private final CopyMetrics COPY_METRICS = CopyMetrics.forSite("TcpServers.copy");
 
 
 	/**
@@ -57,19 +57,7 @@ public class TcpServers {
 	 * @throws IOException if there is an I/O related problem
 	 */
 	static public long copy (final InputStream byteSource, final OutputStream byteSink, final int bufferSize) throws IOException {
-		if (bufferSize <= 0) throw new IllegalArgumentException();
-		final byte[] buffer = new byte[bufferSize];
-
-		long bytesCopied = 0;
-		try {
-			for (int bytesRead = byteSource.read(buffer); bytesRead != -1; bytesRead = byteSource.read(buffer)) {
-				byteSink.write(buffer, 0, bytesRead);
-				bytesCopied += bytesRead;
-			}
-		} catch (final EOFException | SocketException exception) {
-			// treat as EOF because a TCP stream has been closed asynchronously
-		}
-		return bytesCopied;
+		return IOStreams.copy(byteSource, byteSink, bufferSize, COPY_METRICS);
 	}
 
 
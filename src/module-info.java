@@ -4,7 +4,9 @@ module edu.sb.ds {
 	requires transitive java.management;
 	requires transitive java.sql;
 	requires transitive java.rmi;
+	requires jdk.management;
 	requires transitive jdk.httpserver;
 
 	exports edu.sb.ds.util;
+	exports edu.sb.ds.sync to java.rmi;
 }
\ No newline at end of file